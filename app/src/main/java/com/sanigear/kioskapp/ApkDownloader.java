@@ -0,0 +1,309 @@
+package com.sanigear.kioskapp;
+
+import android.util.Log;
+
+import com.sanigear.kioskapp.core.Hashes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads update APKs with parallel HTTP Range requests.
+ * Each range is written to its own part file under a persistent folder, so a dropped connection or
+ * a reboot resumes where it stopped. The assembled APK is checked against its SHA-256 digest
+ * before it is returned.
+ */
+public class ApkDownloader {
+
+    private static final String TAG = "ApkDownloader";
+    private static final int PARALLEL_PARTS = 3;
+    private static final long MIN_PARALLEL_SIZE = 1024 * 1024; // Small files aren't worth splitting
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long PROGRESS_INTERVAL = 500;  // ms between progress callbacks
+
+    public interface ProgressListener {
+        void onProgress(long bytesDone, long totalBytes, long bytesPerSecond);
+    }
+
+    private final File dir;
+
+    public ApkDownloader(File dir) {
+        this.dir = dir;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(TAG, "Could not create download dir " + dir);
+        }
+    }
+
+    /**
+     * Downloads the APK (or resumes a previous attempt) and verifies it.
+     *
+     * @param expectedSha256 lowercase hex digest from the release metadata, or null if none was published
+     * @return the verified APK file
+     */
+    public File download(String url, String expectedSha256, ProgressListener listener) throws IOException {
+        return download(url, expectedSha256, listener, ".apk");
+    }
+
+    /**
+     * Same as {@link #download(String, String, ProgressListener)} for other release files,
+     * e.g. ".patch" for delta updates.
+     */
+    public File download(String url, String expectedSha256, ProgressListener listener,
+                         String extension) throws IOException {
+        String base = "update-" + Hashes.hex(sha256(url.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+        File apkFile = new File(dir, base + extension);
+        File stateFile = new File(dir, base + ".state");
+
+        // A verified APK from an earlier run (e.g. install interrupted by a reboot) can be used as is
+        if (apkFile.isFile() && expectedSha256 != null && expectedSha256.equals(Hashes.sha256Hex(apkFile))) {
+            Log.d(TAG, "Reusing verified APK " + apkFile.getName());
+            return apkFile;
+        }
+        apkFile.delete();
+
+        Probe probe = probe(url);
+        Properties state = readState(stateFile);
+        if (!probe.matches(state)) {
+            // Different file on the server, partial data can't be reused
+            deleteParts(base);
+            state = probe.toState();
+            writeState(stateFile, state);
+        }
+
+        int parts = probe.acceptsRanges && probe.length >= MIN_PARALLEL_SIZE ? PARALLEL_PARTS : 1;
+        List<long[]> ranges = new ArrayList<>();
+        long chunk = probe.length > 0 ? (probe.length + parts - 1) / parts : -1;
+        for (int i = 0; i < parts; i++) {
+            long start = i * Math.max(chunk, 0);
+            long end = probe.length > 0 ? Math.min(probe.length, start + chunk) - 1 : -1;
+            ranges.add(new long[]{start, end});
+        }
+
+        AtomicLong done = new AtomicLong();
+        for (int i = 0; i < parts; i++) done.addAndGet(partFile(base, i).length());
+        Log.d(TAG, "Downloading " + probe.length + " bytes in " + parts + " part(s), resuming at " + done.get());
+
+        long startTime = System.currentTimeMillis();
+        long startBytes = done.get();
+        AtomicLong lastReport = new AtomicLong();
+        Runnable report = () -> {
+            long now = System.currentTimeMillis();
+            long last = lastReport.get();
+            if (listener == null || now - last < PROGRESS_INTERVAL || !lastReport.compareAndSet(last, now)) return;
+            long elapsed = Math.max(1, now - startTime);
+            listener.onProgress(done.get(), probe.length, (done.get() - startBytes) * 1000 / elapsed);
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(parts);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < parts; i++) {
+                File part = partFile(base, i);
+                long[] range = ranges.get(i);
+                futures.add(pool.submit(() -> {
+                    fetchPart(url, probe, part, range[0], range[1], done, report);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Download interrupted", e);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        String actual = assemble(base, parts, apkFile);
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(actual)) {
+            apkFile.delete();
+            deleteParts(base);
+            stateFile.delete();
+            throw new IOException("APK digest mismatch: expected " + expectedSha256 + " got " + actual);
+        }
+        if (expectedSha256 == null) {
+            Log.w(TAG, "No SHA-256 published for this release, relying on the package signature check");
+        }
+
+        deleteParts(base);
+        stateFile.delete();
+        if (listener != null) {
+            long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+            listener.onProgress(apkFile.length(), apkFile.length(), (apkFile.length() - startBytes) * 1000 / elapsed);
+        }
+        Log.d(TAG, "APK verified: " + apkFile.getAbsolutePath());
+        return apkFile;
+    }
+
+    // Downloads one byte range into its part file, resuming from what is already on disk
+    private void fetchPart(String url, Probe probe, File part, long start, long end,
+                           AtomicLong done, Runnable report) throws IOException {
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            // Cancelled by the update task or the job's onStopJob; no further attempts
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Download cancelled");
+            long have = part.length();
+            if (end >= 0 && start + have > end) return; // Part already complete
+
+            HttpURLConnection conn = open(url);
+            try {
+                boolean ranged = probe.acceptsRanges && (have > 0 || end >= 0);
+                if (ranged) {
+                    conn.setRequestProperty("Range", "bytes=" + (start + have) + "-" + (end >= 0 ? end : ""));
+                    if (probe.etag != null) conn.setRequestProperty("If-Range", probe.etag);
+                }
+                int code = conn.getResponseCode();
+                boolean append = code == HttpURLConnection.HTTP_PARTIAL;
+                if (!append && code != HttpURLConnection.HTTP_OK)
+                    throw new IOException("HTTP " + code + " for " + part.getName());
+                if (!append && start > 0)
+                    throw new IOException("Server ignored range request for " + part.getName());
+                if (!append && have > 0) {
+                    // Whole file sent again, start this part over
+                    done.addAndGet(-have);
+                    have = 0;
+                }
+
+                try (InputStream in = conn.getInputStream();
+                     OutputStream out = new FileOutputStream(part, append)) {
+                    byte[] buf = new byte[16 * 1024];
+                    int len;
+                    while ((len = in.read(buf)) > 0) {
+                        out.write(buf, 0, len);
+                        done.addAndGet(len);
+                        report.run();
+                        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Download cancelled");
+                    }
+                }
+                return;
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) throw e; // Cancelled, not a network error
+                lastError = e;
+                Log.w(TAG, "Part " + part.getName() + " attempt " + attempt + " failed", e);
+            } finally {
+                HttpTransport.get().release(conn);
+            }
+        }
+        throw lastError;
+    }
+
+    // Concatenates the parts into the final APK and returns its SHA-256
+    private String assemble(String base, int parts, File apkFile) throws IOException {
+        MessageDigest digest = newDigest();
+        try (OutputStream out = new FileOutputStream(apkFile)) {
+            byte[] buf = new byte[64 * 1024];
+            for (int i = 0; i < parts; i++) {
+                try (InputStream in = new FileInputStream(partFile(base, i))) {
+                    int len;
+                    while ((len = in.read(buf)) > 0) {
+                        out.write(buf, 0, len);
+                        digest.update(buf, 0, len);
+                    }
+                }
+            }
+        }
+        return Hashes.hex(digest.digest());
+    }
+
+    private Probe probe(String url) throws IOException {
+        HttpURLConnection conn = open(url);
+        try {
+            conn.setRequestMethod("HEAD");
+            int code = conn.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK)
+                throw new IOException("Failed to download APK. HTTP " + code);
+            Probe probe = new Probe();
+            probe.length = conn.getContentLengthLong();
+            probe.etag = conn.getHeaderField("ETag");
+            probe.acceptsRanges = "bytes".equalsIgnoreCase(conn.getHeaderField("Accept-Ranges"));
+            return probe;
+        } finally {
+            HttpTransport.get().release(conn);
+        }
+    }
+
+    // Compression would make byte ranges meaningless
+    private static HttpURLConnection open(String url) throws IOException {
+        return HttpTransport.get().openIdentity(url);
+    }
+
+    private File partFile(String base, int index) {
+        return new File(dir, base + ".part" + index);
+    }
+
+    private void deleteParts(String base) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(base + ".part"));
+        if (files != null) for (File f : files) f.delete();
+    }
+
+    private static Properties readState(File stateFile) {
+        Properties state = new Properties();
+        if (!stateFile.isFile()) return state;
+        try (InputStream in = new FileInputStream(stateFile)) {
+            state.load(in);
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable download state", e);
+        }
+        return state;
+    }
+
+    private static void writeState(File stateFile, Properties state) throws IOException {
+        try (OutputStream out = new FileOutputStream(stateFile)) {
+            state.store(out, null);
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        return newDigest().digest(data);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // What the server reported for the file; used to decide whether part files can be resumed
+    private static class Probe {
+        long length = -1;
+        String etag;
+        boolean acceptsRanges;
+
+        boolean matches(Properties state) {
+            return String.valueOf(length).equals(state.getProperty("length"))
+                    && String.valueOf(etag).equals(state.getProperty("etag"));
+        }
+
+        Properties toState() {
+            Properties state = new Properties();
+            state.setProperty("length", String.valueOf(length));
+            state.setProperty("etag", String.valueOf(etag));
+            return state;
+        }
+    }
+}
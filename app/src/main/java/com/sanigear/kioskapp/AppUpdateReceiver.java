@@ -12,11 +12,14 @@ import android.widget.Toast;
 import android.app.admin.DevicePolicyManager;
 import android.content.pm.PackageManager;
 
+import com.sanigear.kioskapp.core.PackagePolicy;
+
 public class AppUpdateReceiver extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
         Log.d("AppUpdateReceiver", "App was updated via MY_PACKAGE_REPLACED");
+        StartupTimer.setTrigger("package_replaced");
 
         // Show a toast to notify the user about the update
         new Handler(Looper.getMainLooper()).post(() ->
@@ -41,7 +44,7 @@ public class AppUpdateReceiver extends BroadcastReceiver {
                 ComponentName adminComponent = new ComponentName(context, MyDeviceAdminReceiver.class);
 
                 // Set the package as the home app
-                dpm.setLockTaskPackages(adminComponent, new String[]{context.getPackageName()});
+                dpm.setLockTaskPackages(adminComponent, PackagePolicy.lockTaskPackages());
 
                 // Optionally, if you want to explicitly set this as the home launcher, use the following
                 Intent intent = new Intent(Intent.ACTION_MAIN);
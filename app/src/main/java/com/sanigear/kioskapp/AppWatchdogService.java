@@ -4,12 +4,11 @@ import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.Service;
-import android.app.usage.UsageEvents;
-import android.app.usage.UsageStatsManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Build;
-import android.os.Handler;
 import android.os.IBinder;
 import android.util.Log;
 import android.widget.Toast;
@@ -17,101 +16,117 @@ import android.widget.Toast;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import com.sanigear.kioskapp.core.PackagePolicy;
 
 public class AppWatchdogService extends Service {
 
     private static final String TAG = "AppWatchdogService";
-    private static final long INTERVAL = 2000; // Run every 2 seconds
     private static final String CHANNEL_ID = "watchdog_channel";
 
-    private static final String KIOSK_PACKAGE = "com.sanigear.kioskapp";
-    private static final Set<String> WHITELISTED_PACKAGES = new HashSet<>(Arrays.asList(
-            "com.sanigear.kioskapp",
-            "com.adobe.reader",
-            "com.android.printspooler",
-            "com.android.bips",
-            "com.google.android.printservice.recommendation",
-            "com.android.settings",
-            "com.google.android.packageinstaller"
-    ));
-
-    private Handler handler;
-    private Runnable checker;
+    // Commands sent through startService() to adjust the watchdog cadence
+    public static final String ACTION_BOOST = "com.sanigear.kioskapp.action.WATCHDOG_BOOST";
+    public static final String ACTION_PAUSE = "com.sanigear.kioskapp.action.WATCHDOG_PAUSE";
+    public static final String ACTION_RESUME = "com.sanigear.kioskapp.action.WATCHDOG_RESUME";
+
+    private static final String KIOSK_PACKAGE = PackagePolicy.KIOSK_PACKAGE;
+
+    private static volatile WatchdogScheduler activeScheduler;
+
+    private WatchdogScheduler scheduler;
+    private ForegroundAppTracker foregroundTracker;
     private String lastApp = null;
 
+    private final BroadcastReceiver screenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            scheduler.setScreenOff(Intent.ACTION_SCREEN_OFF.equals(intent.getAction()));
+        }
+    };
+
+    /**
+     * Sends a cadence command (ACTION_BOOST, ACTION_PAUSE, ACTION_RESUME) to the watchdog,
+     * starting it if needed.
+     */
+    public static void sendCommand(Context context, String action) {
+        Intent intent = new Intent(context, AppWatchdogService.class);
+        intent.setAction(action);
+        context.startService(intent);
+    }
+
+    /**
+     * Cadence and tick timing of the running watchdog, for the About dialog.
+     */
+    public static String getStatusSummary() {
+        WatchdogScheduler current = activeScheduler;
+        return current != null ? current.getStatusSummary() : "Watchdog not running";
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
         createNotificationChannel();
         startForeground(1, createNotification());
+        Metrics.startSnapshots(this);
+        KioskLog.init(this);
 
         Toast.makeText(this, "Watchdog started", Toast.LENGTH_SHORT).show();
         Log.d(TAG, "Watchdog started");
 
-        handler = new Handler();
-        checker = new Runnable() {
-            @Override
-            public void run() {
-                String currentApp = getForegroundApp();
-                if (currentApp != null && !isAppWhitelisted(currentApp)) {
-                    if (!currentApp.equals(lastApp)) {
-                        Log.w(TAG, "Unauthorized app: " + currentApp);
-                        recoverToKiosk();
-                        lastApp = currentApp;
-                    }
-                } else {
-                    lastApp = currentApp;
-                }
-
-                handler.postDelayed(this, INTERVAL);
-            }
-        };
-        handler.post(checker);
+        foregroundTracker = ForegroundAppTracker.getInstance(this);
+        scheduler = new WatchdogScheduler(this, this::checkForegroundApp);
+        activeScheduler = scheduler;
+
+        IntentFilter screenFilter = new IntentFilter();
+        screenFilter.addAction(Intent.ACTION_SCREEN_OFF);
+        screenFilter.addAction(Intent.ACTION_SCREEN_ON);
+        registerReceiver(screenReceiver, screenFilter, null, scheduler.getHandler());
+
+        // A sticky restart after the process was killed while the admin was unlocked
+        scheduler.setPaused(KioskStore.get(this).get(KioskStore.WATCHDOG_PAUSED));
+        scheduler.start();
+
+        // Lets other kiosks on the LAN update from this one; a no-op unless peer updates are enabled
+        KioskExecutor.get().submit(KioskExecutor.Lane.BACKGROUND, "peer-serve", 60000, null,
+                () -> PeerUpdates.get(this).serveInstalledApk());
     }
 
-    private boolean isAppWhitelisted(String packageName) {
-        for (String allowed : WHITELISTED_PACKAGES) {
-            if (packageName.equals(allowed) || packageName.startsWith(allowed + ".")) {
-                return true;
+    // Runs on the watchdog looper
+    private void checkForegroundApp() {
+        String currentApp = getForegroundApp();
+        if (currentApp != null && !isAppWhitelisted(currentApp)) {
+            if (!currentApp.equals(lastApp)) {
+                KioskLog.w(TAG, "Unauthorized app:", currentApp);
+                recoverToKiosk();
+                lastApp = currentApp;
             }
+        } else {
+            lastApp = currentApp;
         }
-        return false;
+    }
+
+    private boolean isAppWhitelisted(String packageName) {
+        return PackagePolicy.kiosk().isAllowed(packageName);
     }
     private void recoverToKiosk() {
-        String currentApp = getForegroundApp();
-        Log.d(TAG, "Current app in watchdog: " + currentApp);
+        // Reuse the state from this tick instead of querying UsageStats again
+        String currentApp = foregroundTracker.getForegroundPackage();
+        KioskLog.d(TAG, "Current app in watchdog:", currentApp);
 
         if (!KIOSK_PACKAGE.equals(currentApp)) {
             // If not in the kiosk app, return to it
-            Log.d(TAG, "Recovering to kiosk mode.");
+            KioskLog.i(TAG, "Recovering to kiosk mode");
+            Metrics.counter(Metrics.WATCHDOG_RECOVERIES).increment();
             Intent intent = new Intent(this, MainActivity.class);
             intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);  // Bring it to the front
             startActivity(intent);
         } else {
-            Log.d(TAG, "Already in Kiosk Mode. No need to restart MainActivity.");
+            KioskLog.d(TAG, "Already in kiosk mode, not restarting MainActivity");
         }
     }
     private String getForegroundApp() {
-        UsageStatsManager usm = (UsageStatsManager) getSystemService(Context.USAGE_STATS_SERVICE);
-        if (usm == null) return null;
-
-        long now = System.currentTimeMillis();
-        UsageEvents events = usm.queryEvents(now - 10000, now);
-        UsageEvents.Event event = new UsageEvents.Event();
-        String lastAppSeen = null;
-
-        while (events.hasNextEvent()) {
-            events.getNextEvent(event);
-            if (event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND) {
-                lastAppSeen = event.getPackageName();
-            }
-        }
-
-        Log.d(TAG, "Foreground app: " + lastAppSeen);
-        return lastAppSeen;
+        String foregroundApp = foregroundTracker.poll();
+        KioskLog.d(TAG, "Foreground app:", foregroundApp);
+        return foregroundApp;
     }
 
     private void createNotificationChannel() {
@@ -139,12 +154,25 @@ public class AppWatchdogService extends Service {
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_BOOST.equals(action)) {
+            scheduler.boost();
+        } else if (ACTION_PAUSE.equals(action) || ACTION_RESUME.equals(action)) {
+            boolean paused = ACTION_PAUSE.equals(action);
+            scheduler.setPaused(paused);
+            KioskStore store = KioskStore.get(this);
+            store.put(KioskStore.WATCHDOG_PAUSED, paused);
+            store.flush(); // The admin may be in Settings when the process is killed
+        }
         return START_STICKY;
     }
 
     @Override
     public void onDestroy() {
-        handler.removeCallbacks(checker);
+        unregisterReceiver(screenReceiver);
+        scheduler.quit();
+        activeScheduler = null;
+        PeerUpdates.get(this).stop();
         super.onDestroy();
         Log.d(TAG, "Watchdog stopped");
     }
@@ -0,0 +1,175 @@
+package com.sanigear.kioskapp;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Event-driven view of the default network, fed by a NetworkCallback instead of one-shot checks.
+ * Raw callbacks are debounced so a flapping link settles before listeners hear about it, and
+ * outages are timed from the moment the link stopped being validated until it validated again.
+ */
+public class ConnectivityMonitor {
+
+    private static final String TAG = "ConnectivityMonitor";
+    private static final long LOSS_DEBOUNCE = 3000;     // Ride out short drops before going offline
+    private static final long RECOVERY_DEBOUNCE = 1000; // Let a returning link settle before reloading
+
+    public enum State {
+        OFFLINE,
+        CONNECTED,  // Has a network, but it hasn't validated (captive portal, no upstream yet)
+        VALIDATED
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main thread once a new state has held for the debounce period.
+         */
+        void onConnectivityChanged(State previous, State current, boolean metered);
+    }
+
+    private final ConnectivityManager connectivityManager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Listener listener;
+    private final ConnectivityManager.NetworkCallback callback = new Callback();
+    private final Runnable commit = this::commit;
+
+    // Main thread only
+    private State state = State.OFFLINE;
+    private State pending = State.OFFLINE;
+    private boolean metered = false;
+    private boolean pendingMetered = false;
+    private boolean registered = false;
+
+    // Outage bookkeeping, main thread only
+    private long outageStartedAt = 0;
+    private long lastOutageMs = 0;
+    private long lastRecoveredAt = 0;
+    private int outages = 0;
+
+    public ConnectivityMonitor(Context context, Listener listener) {
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.listener = listener;
+    }
+
+    /**
+     * Seeds the state from the current default network and starts listening for changes.
+     */
+    public void start() {
+        if (registered || connectivityManager == null) return;
+        Network network = connectivityManager.getActiveNetwork();
+        NetworkCapabilities caps = network != null ? connectivityManager.getNetworkCapabilities(network) : null;
+        state = pending = stateOf(caps);
+        metered = pendingMetered = isMetered(caps);
+        if (state != State.VALIDATED) outageStartedAt = SystemClock.elapsedRealtime();
+        try {
+            connectivityManager.registerDefaultNetworkCallback(callback);
+            registered = true;
+        } catch (RuntimeException e) {
+            // Too many callbacks registered for this app
+            Log.e(TAG, "Could not register network callback", e);
+        }
+        Log.d(TAG, "Started in state " + state + (metered ? " (metered)" : ""));
+    }
+
+    public void stop() {
+        handler.removeCallbacks(commit);
+        if (!registered) return;
+        try {
+            connectivityManager.unregisterNetworkCallback(callback);
+        } catch (IllegalArgumentException ignored) {
+            // Already unregistered
+        }
+        registered = false;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * True if there is a network at all, validated or not.
+     */
+    public boolean isConnected() {
+        return state != State.OFFLINE;
+    }
+
+    public boolean isMetered() {
+        return metered;
+    }
+
+    /**
+     * Connection state and outage history, for the About dialog.
+     */
+    public String getStatusSummary() {
+        String summary = "Network " + state + (metered ? " (metered)" : "") + " | outages " + outages;
+        if (outages > 0) {
+            long ago = (SystemClock.elapsedRealtime() - lastRecoveredAt) / 1000;
+            summary += " | last " + lastOutageMs / 1000 + " s, recovered " + ago + " s ago";
+        }
+        return summary;
+    }
+
+    // Runs on the ConnectivityManager thread; hands the raw state to the main thread for debouncing
+    private void onRawChange(NetworkCapabilities caps) {
+        State raw = stateOf(caps);
+        boolean rawMetered = isMetered(caps);
+        handler.post(() -> schedule(raw, rawMetered));
+    }
+
+    private void schedule(State raw, boolean rawMetered) {
+        if (raw == pending && rawMetered == pendingMetered) return;
+        pending = raw;
+        pendingMetered = rawMetered;
+        handler.removeCallbacks(commit);
+        if (raw == state && rawMetered == metered) return; // Flapped back before it settled
+        handler.postDelayed(commit, raw.ordinal() < state.ordinal() ? LOSS_DEBOUNCE : RECOVERY_DEBOUNCE);
+    }
+
+    private void commit() {
+        State previous = state;
+        state = pending;
+        metered = pendingMetered;
+        long now = SystemClock.elapsedRealtime();
+
+        if (previous == State.VALIDATED && state != State.VALIDATED) {
+            // The link went bad before the debounce ran, so that time counts toward the outage
+            outageStartedAt = now - LOSS_DEBOUNCE;
+            Log.w(TAG, "Network lost (" + state + ")");
+        } else if (previous != State.VALIDATED && state == State.VALIDATED && outageStartedAt > 0) {
+            lastOutageMs = now - outageStartedAt;
+            lastRecoveredAt = now;
+            outageStartedAt = 0;
+            outages++;
+            Log.i(TAG, "Network validated again after " + lastOutageMs + " ms");
+        }
+        Log.d(TAG, previous + " -> " + state + (metered ? " (metered)" : ""));
+        if (listener != null) listener.onConnectivityChanged(previous, state, metered);
+    }
+
+    private static State stateOf(NetworkCapabilities caps) {
+        if (caps == null || !caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)) return State.OFFLINE;
+        return caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED) ? State.VALIDATED : State.CONNECTED;
+    }
+
+    private static boolean isMetered(NetworkCapabilities caps) {
+        return caps != null && !caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+    }
+
+    private class Callback extends ConnectivityManager.NetworkCallback {
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities caps) {
+            onRawChange(caps);
+        }
+
+        @Override
+        public void onLost(Network network) {
+            onRawChange(null);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.sanigear.kioskapp;
+
+import android.app.usage.UsageEvents;
+import android.app.usage.UsageStatsManager;
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.sanigear.kioskapp.core.EventCursor;
+import com.sanigear.kioskapp.core.ForegroundEventReducer;
+
+/**
+ * Tracks the foreground app from UsageStats events incrementally.
+ * Keeps a high-water-mark timestamp so each poll only reads events newer than the last one seen,
+ * and keeps the current foreground package in memory between polls.
+ */
+public class ForegroundAppTracker {
+
+    private static final long INITIAL_LOOKBACK = 10000; // First poll looks back 10 seconds
+
+    private static ForegroundAppTracker instance;
+
+    private final UsageStatsManager usageStatsManager;
+    private final ForegroundEventReducer reducer = new ForegroundEventReducer(INITIAL_LOOKBACK);
+    private final UsageEventCursor cursor = new UsageEventCursor();
+
+    private ForegroundAppTracker(Context context) {
+        usageStatsManager = (UsageStatsManager) context.getSystemService(Context.USAGE_STATS_SERVICE);
+    }
+
+    /**
+     * Returns the process-wide tracker so the service and the activity share one cursor.
+     */
+    public static synchronized ForegroundAppTracker getInstance(Context context) {
+        if (instance == null) {
+            instance = new ForegroundAppTracker(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Reads the events recorded since the last poll and returns the current foreground package.
+     */
+    public synchronized String poll() {
+        if (usageStatsManager == null) return reducer.getForegroundPackage();
+
+        long now = System.currentTimeMillis();
+        long begin = reducer.queryStart(now);
+        if (begin < 0) return reducer.getForegroundPackage();
+
+        long queryStart = SystemClock.elapsedRealtimeNanos();
+        UsageEvents events = usageStatsManager.queryEvents(begin, now);
+        Metrics.histogram(Metrics.USAGE_QUERY_US).record((SystemClock.elapsedRealtimeNanos() - queryStart) / 1000);
+        if (events == null) return reducer.getForegroundPackage();
+
+        cursor.reset(events);
+        return reducer.consume(cursor);
+    }
+
+    /**
+     * Last foreground package seen, without querying UsageStats.
+     */
+    public synchronized String getForegroundPackage() {
+        return reducer.getForegroundPackage();
+    }
+
+    // Walks UsageEvents through one reused Event object
+    private static class UsageEventCursor implements EventCursor {
+        private final UsageEvents.Event event = new UsageEvents.Event();
+        private UsageEvents events;
+
+        void reset(UsageEvents events) {
+            this.events = events;
+        }
+
+        @Override
+        public boolean next() {
+            if (!events.hasNextEvent()) return false;
+            events.getNextEvent(event);
+            return true;
+        }
+
+        @Override
+        public long timeStamp() {
+            return event.getTimeStamp();
+        }
+
+        @Override
+        public int eventType() {
+            return event.getEventType();
+        }
+
+        @Override
+        public String packageName() {
+            return event.getPackageName();
+        }
+    }
+}
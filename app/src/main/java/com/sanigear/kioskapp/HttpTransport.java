@@ -0,0 +1,168 @@
+package com.sanigear.kioskapp;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.CookieManager;
+
+import com.sanigear.kioskapp.core.HttpConnector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * The one place native code opens HTTP connections (PDFs, portal assets, update checks, APKs).
+ * Every connection gets timeouts, the shared TLS socket factory so sessions are resumed instead of
+ * renegotiated, and the WebView's cookies when it talks to the portal. Responses are drained
+ * before they are released so the keep-alive socket goes back to the platform pool rather than
+ * being thrown away. Hosts are looked up again in the background at most once per
+ * {@link #DNS_REFRESH} so the system resolver's cache stays warm, and {@link #preconnect(String)}
+ * opens a connection ahead of time when the network comes back.
+ */
+public final class HttpTransport implements HttpConnector {
+
+    private static final String TAG = "HttpTransport";
+    static final int CONNECT_TIMEOUT = 15000;
+    static final int READ_TIMEOUT = 30000;
+    private static final int PRECONNECT_TIMEOUT = 5000;
+    private static final long DNS_REFRESH = 5 * 60 * 1000;
+    private static final int MAX_DRAIN = 64 * 1024; // Bigger leftovers cost more than a new handshake
+    private static final String USER_AGENT = "Mozilla/5.0 (Linux; Android) SanigearKiosk";
+
+    private static HttpTransport instance;
+
+    private final SSLSocketFactory socketFactory;
+    private final Map<String, Long> dnsWarmedAt = new ConcurrentHashMap<>(); // elapsedRealtime
+
+    private HttpTransport() {
+        // Platform defaults, made explicit: reuse idle keep-alive sockets per host
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", "8");
+
+        SSLSocketFactory factory;
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, null, null);
+            context.getClientSessionContext().setSessionCacheSize(32);
+            context.getClientSessionContext().setSessionTimeout(24 * 60 * 60); // Seconds
+            factory = context.getSocketFactory();
+        } catch (GeneralSecurityException e) {
+            Log.w(TAG, "Falling back to the default TLS socket factory", e);
+            factory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+        socketFactory = factory;
+    }
+
+    public static synchronized HttpTransport get() {
+        if (instance == null) instance = new HttpTransport();
+        return instance;
+    }
+
+    /**
+     * Opens a connection with timeouts and transparent gzip. Portal requests carry the WebView session.
+     */
+    @Override
+    public HttpURLConnection open(String url) throws IOException {
+        URL target = new URL(url);
+        warmDns(target.getHost());
+        HttpURLConnection conn = (HttpURLConnection) target.openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        conn.setRequestProperty("User-Agent", USER_AGENT);
+        if (conn instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) conn).setSSLSocketFactory(socketFactory);
+        }
+        if (SecureWebViewClient.URL_POLICY.isAllowedHost(target.getHost())) {
+            String cookie = CookieManager.getInstance().getCookie(url);
+            if (cookie != null) conn.setRequestProperty("Cookie", cookie);
+        }
+        return conn;
+    }
+
+    /**
+     * Like {@link #open(String)} but without compression, for byte-range requests.
+     */
+    public HttpURLConnection openIdentity(String url) throws IOException {
+        HttpURLConnection conn = open(url);
+        conn.setRequestProperty("Accept-Encoding", "identity");
+        return conn;
+    }
+
+    /**
+     * Reads off whatever is left of a small response body so the socket can be reused, then releases it.
+     */
+    @Override
+    public void release(HttpURLConnection conn) {
+        if (conn == null) return;
+        try {
+            InputStream in = conn.getResponseCode() >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            if (in != null) {
+                byte[] buf = new byte[8192];
+                int drained = 0;
+                int len;
+                while (drained < MAX_DRAIN && (len = in.read(buf)) > 0) drained += len;
+                in.close();
+            }
+        } catch (IOException ignored) {
+            // Already consumed and closed, or the connection broke; nothing to return to the pool
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Opens a connection to the host of the URL ahead of time, off the calling thread.
+     */
+    public void preconnect(String url) {
+        String key = "preconnect:" + Uri.parse(url).getHost();
+        KioskExecutor.get().submit(KioskExecutor.Lane.BACKGROUND, key, PRECONNECT_TIMEOUT * 2, null,
+                () -> preconnectNow(url));
+    }
+
+    /**
+     * Completes a HEAD request so DNS, TCP and TLS are done before the first real request.
+     */
+    public void preconnectNow(String url) {
+        HttpURLConnection conn = null;
+        try {
+            conn = open(url);
+            conn.setRequestMethod("HEAD");
+            conn.setConnectTimeout(PRECONNECT_TIMEOUT);
+            conn.setReadTimeout(PRECONNECT_TIMEOUT);
+            conn.getResponseCode();
+            KioskLog.d(TAG, "Pre-connected", url);
+        } catch (IOException e) {
+            Log.w(TAG, "Pre-connect failed: " + url, e);
+        } finally {
+            release(conn);
+        }
+    }
+
+    // HttpURLConnection resolves on its own and the addresses aren't kept here; a throttled
+    // background lookup only keeps the system resolver's cache warm for the next request
+    private void warmDns(String host) {
+        if (host == null) return;
+        Long warmedAt = dnsWarmedAt.get(host);
+        long now = SystemClock.elapsedRealtime();
+        if (warmedAt != null && now - warmedAt < DNS_REFRESH) return;
+        dnsWarmedAt.put(host, now);
+        KioskExecutor.get().submit(KioskExecutor.Lane.BACKGROUND, "dns:" + host, PRECONNECT_TIMEOUT, null, () -> {
+            try {
+                InetAddress.getAllByName(host);
+            } catch (IOException e) {
+                dnsWarmedAt.remove(host); // Try again on the next request
+                KioskLog.w(TAG, "Lookup failed:", host);
+            }
+        });
+    }
+}
@@ -0,0 +1,36 @@
+package com.sanigear.kioskapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageInstaller;
+import android.util.Log;
+
+/**
+ * Result of a silent install from {@link Utils#installSilently}. Success never gets here in
+ * practice, as the install replaces the running app; failures are logged and the staged APK stays
+ * for the next maintenance window.
+ */
+public class InstallResultReceiver extends BroadcastReceiver {
+
+    private static final String TAG = "InstallResultReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        int status = intent.getIntExtra(PackageInstaller.EXTRA_STATUS, PackageInstaller.STATUS_FAILURE);
+        String message = intent.getStringExtra(PackageInstaller.EXTRA_STATUS_MESSAGE);
+        switch (status) {
+            case PackageInstaller.STATUS_SUCCESS:
+                Log.d(TAG, "Update installed");
+                break;
+            case PackageInstaller.STATUS_PENDING_USER_ACTION:
+                // Only happens when the app lost device owner; nobody is there to confirm at night
+                Metrics.counter("update.install_failed").increment();
+                Log.w(TAG, "Installer asked for confirmation, leaving the update staged");
+                break;
+            default:
+                Metrics.counter("update.install_failed").increment();
+                Log.e(TAG, "Update install failed (" + status + "): " + message);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.sanigear.kioskapp;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared background executor for the app, replacing one-off threads.
+ * Work runs in one of two bounded lanes so a user waiting on a PDF never queues behind an update
+ * download. Tasks with the same key are single-flight (a second submit returns the running task
+ * until its work has actually returned, even after a timeout), every task has a timeout after
+ * which it is interrupted, and tasks can be tied to an owner such as an activity and cancelled
+ * together when it goes away.
+ */
+public final class KioskExecutor {
+
+    private static final String TAG = "KioskExecutor";
+
+    public enum Lane {
+        INTERACTIVE, // Someone is waiting on it: PDFs, log export, startup pre-connect
+        BACKGROUND   // Update checks and downloads, housekeeping
+    }
+
+    private static KioskExecutor instance;
+
+    private final ThreadPoolExecutor interactive =
+            newLane("KioskInteractive", 2, 8, Process.THREAD_PRIORITY_DEFAULT);
+    private final ThreadPoolExecutor background =
+            newLane("KioskBackground", 1, 16, Process.THREAD_PRIORITY_BACKGROUND);
+    private final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "KioskTimeouts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Map<String, Task> inFlight = new ConcurrentHashMap<>();
+    private final Map<Object, Set<Task>> byOwner = new ConcurrentHashMap<>();
+
+    private KioskExecutor() {}
+
+    public static synchronized KioskExecutor get() {
+        if (instance == null) instance = new KioskExecutor();
+        return instance;
+    }
+
+    /**
+     * Runs work in a lane.
+     *
+     * @param key       single-flight key, e.g. the URL; null to always run
+     * @param timeoutMs the task is interrupted this long after it started running
+     * @param owner     cancelled together by {@link #cancelAll(Object)}; null if it should outlive its caller
+     * @return the task, or the one already running for the same key; already cancelled if the
+     *         lane was full, so callers with someone waiting should check {@link Future#isCancelled()}
+     */
+    public Future<?> submit(Lane lane, String key, long timeoutMs, Object owner, Runnable work) {
+        Task task = new Task(lane, key, timeoutMs, owner, work);
+        if (key != null) {
+            Task running = inFlight.putIfAbsent(key, task);
+            if (running != null) {
+                Metrics.counter("executor.deduplicated").increment();
+                KioskLog.d(TAG, "Already running:", key);
+                return running;
+            }
+        }
+        if (owner != null) byOwner.computeIfAbsent(owner, o -> ConcurrentHashMap.newKeySet()).add(task);
+
+        ThreadPoolExecutor pool = lane == Lane.INTERACTIVE ? interactive : background;
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException e) {
+            Metrics.counter("executor.rejected").increment();
+            Log.w(TAG, lane + " lane full, dropping " + (key != null ? key : "task"));
+            task.cancel(false);
+        }
+        Metrics.gauge(task.metric("queue_depth")).set(pool.getQueue().size());
+        return task;
+    }
+
+    public boolean isInFlight(String key) {
+        return key != null && inFlight.containsKey(key);
+    }
+
+    /**
+     * Cancels the task with this key and frees the key right away, so the same work can be
+     * submitted again while the old task drains. Its work must not share output with a new run,
+     * e.g. by writing per-thread temp files.
+     */
+    public void cancel(String key) {
+        Task task = key != null ? inFlight.get(key) : null;
+        if (task == null) return;
+        inFlight.remove(key, task);
+        task.cancel(true);
+    }
+
+    /**
+     * Cancels everything submitted with this owner, e.g. from onDestroy.
+     */
+    public void cancelAll(Object owner) {
+        Set<Task> tasks = byOwner.remove(owner);
+        if (tasks == null) return;
+        for (Task task : tasks) task.cancel(true);
+    }
+
+    private static ThreadPoolExecutor newLane(String name, int threads, int queueSize, int priority) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> new Thread(() -> {
+                    Process.setThreadPriority(priority);
+                    r.run();
+                }, name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private class Task extends FutureTask<Void> {
+        private final Lane lane;
+        private final String key;
+        private final long timeoutMs;
+        private final Object owner;
+        private final long queuedAt = SystemClock.elapsedRealtime();
+        private volatile long startedAt = 0;
+        private volatile ScheduledFuture<?> timeout;
+
+        Task(Lane lane, String key, long timeoutMs, Object owner, Runnable work) {
+            super(work, null);
+            this.lane = lane;
+            this.key = key;
+            this.timeoutMs = timeoutMs;
+            this.owner = owner;
+        }
+
+        String metric(String name) {
+            return "executor." + lane.name().toLowerCase(Locale.US) + "." + name;
+        }
+
+        @Override
+        public void run() {
+            if (isDone()) return;
+            startedAt = SystemClock.elapsedRealtime();
+            Metrics.histogram(metric("wait_ms")).record(startedAt - queuedAt);
+            timeout = timeouts.schedule(() -> {
+                if (isDone()) return;
+                Metrics.counter("executor.timeouts").increment();
+                Log.w(TAG, "Timed out after " + timeoutMs + " ms: " + (key != null ? key : lane + " task"));
+                cancel(true);
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                super.run();
+            } finally {
+                // Only now: a cancel interrupts the work but doesn't wait for it to stop
+                if (key != null) inFlight.remove(key, this);
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (timeout != null) timeout.cancel(false);
+            // Cancelled before it ran; otherwise run() frees the key once the work returns
+            if (key != null && startedAt == 0) inFlight.remove(key, this);
+            if (owner != null) {
+                Set<Task> tasks = byOwner.get(owner);
+                if (tasks != null) tasks.remove(this);
+            }
+            if (startedAt > 0) Metrics.histogram(metric("run_ms")).record(SystemClock.elapsedRealtime() - startedAt);
+            if (isCancelled()) Metrics.counter("executor.cancelled").increment();
+            try {
+                get();
+            } catch (Exception e) {
+                // Tasks handle their own errors; this only catches the ones that slipped through
+                if (!isCancelled()) Log.e(TAG, "Task failed: " + (key != null ? key : lane), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.sanigear.kioskapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Structured logger for hot paths. Records go into fixed-size slots of a memory-mapped ring file
+ * (files/kiosk_log.bin), so logging doesn't build strings, doesn't touch logcat and survives the
+ * process being killed. Messages should be constants; the variable part is passed separately as
+ * a String or a long. Below the level gate a call is a single volatile read.
+ * Warnings and errors are mirrored to logcat as well.
+ */
+public final class KioskLog {
+
+    private static final String TAG = "KioskLog";
+    private static final String FILE_NAME = "kiosk_log.bin";
+    private static final String EXPORT_PREFIX = "kiosk_log_";
+    private static final int MAX_EXPORTS = 5;
+
+    private static final int MAGIC = 0x4b4c4f47; // "KLOG"
+    private static final int VERSION = 1;
+    private static final int HEADER = 64;        // magic, version, sequence
+    private static final int RECORD = 128;       // time (8), level (1), length (1), text
+    private static final int TEXT_MAX = RECORD - 10;
+    private static final int CAPACITY = 16384;   // About 2 MB, several hours of watchdog ticks
+
+    private static final Object lock = new Object();
+    private static final byte[] digits = new byte[20]; // Scratch for numbers, guarded by lock
+
+    private static volatile int minLevel = Log.DEBUG;
+    private static MappedByteBuffer buffer;
+    private static long sequence;
+
+    private KioskLog() {}
+
+    /**
+     * Maps the ring file. Safe to call from every entry point; only the first call does any work.
+     */
+    public static void init(Context context) {
+        synchronized (lock) {
+            if (buffer != null) return;
+            File file = new File(context.getApplicationContext().getFilesDir(), FILE_NAME);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                // The mapping stays valid after the channel is closed
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) CAPACITY * RECORD);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not map " + file.getName() + ", logging to logcat only", e);
+                return;
+            }
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(8, 0);
+            }
+            sequence = buffer.getLong(8);
+        }
+    }
+
+    public static void setLevel(int level) {
+        minLevel = level;
+    }
+
+    public static boolean isLoggable(int level) {
+        return level >= minLevel;
+    }
+
+    public static void d(String tag, String msg) {
+        if (Log.DEBUG >= minLevel) log(Log.DEBUG, tag, msg, null, 0, false);
+    }
+
+    public static void d(String tag, String msg, String arg) {
+        if (Log.DEBUG >= minLevel) log(Log.DEBUG, tag, msg, arg, 0, false);
+    }
+
+    public static void d(String tag, String msg, long value) {
+        if (Log.DEBUG >= minLevel) log(Log.DEBUG, tag, msg, null, value, true);
+    }
+
+    public static void i(String tag, String msg) {
+        if (Log.INFO >= minLevel) log(Log.INFO, tag, msg, null, 0, false);
+    }
+
+    public static void i(String tag, String msg, String arg) {
+        if (Log.INFO >= minLevel) log(Log.INFO, tag, msg, arg, 0, false);
+    }
+
+    public static void i(String tag, String msg, long value) {
+        if (Log.INFO >= minLevel) log(Log.INFO, tag, msg, null, value, true);
+    }
+
+    public static void w(String tag, String msg) {
+        if (Log.WARN >= minLevel) log(Log.WARN, tag, msg, null, 0, false);
+    }
+
+    public static void w(String tag, String msg, String arg) {
+        if (Log.WARN >= minLevel) log(Log.WARN, tag, msg, arg, 0, false);
+    }
+
+    private static void log(int level, String tag, String msg, String arg, long value, boolean hasValue) {
+        boolean written;
+        synchronized (lock) {
+            written = buffer != null;
+            if (written) write(level, tag, msg, arg, value, hasValue);
+        }
+        if (!written || level >= Log.WARN) {
+            String text = arg != null ? msg + " " + arg : hasValue ? msg + " " + value : msg;
+            Log.println(level, tag, text);
+        }
+    }
+
+    // Caller holds the lock
+    private static void write(int level, String tag, String msg, String arg, long value, boolean hasValue) {
+        int base = HEADER + (int) (sequence % CAPACITY) * RECORD;
+        int end = base + RECORD;
+        buffer.putLong(base, System.currentTimeMillis());
+        buffer.put(base + 8, (byte) level);
+        int pos = base + 10;
+        pos = put(pos, end, tag);
+        pos = put(pos, end, ": ");
+        pos = put(pos, end, msg);
+        if (arg != null) {
+            pos = put(pos, end, " ");
+            pos = put(pos, end, arg);
+        } else if (hasValue) {
+            pos = put(pos, end, " ");
+            pos = putLong(pos, end, value);
+        }
+        buffer.put(base + 9, (byte) (pos - base - 10));
+        sequence++;
+        buffer.putLong(8, sequence);
+    }
+
+    private static int put(int pos, int end, String s) {
+        if (s == null) s = "null";
+        for (int i = 0, n = s.length(); i < n && pos < end; i++) {
+            char c = s.charAt(i);
+            buffer.put(pos++, c < 0x80 ? (byte) c : (byte) '?');
+        }
+        return pos;
+    }
+
+    private static int putLong(int pos, int end, long value) {
+        if (value == Long.MIN_VALUE) return put(pos, end, "-9223372036854775808");
+        if (value < 0) {
+            if (pos < end) buffer.put(pos++, (byte) '-');
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (n > 0 && pos < end) buffer.put(pos++, digits[--n]);
+        return pos;
+    }
+
+    /**
+     * Writes the records of the last {@code hours} to a timestamped text file in {@code dir},
+     * oldest first. Only the newest few exports are kept there.
+     */
+    public static File export(File dir, int hours) throws IOException {
+        long since = System.currentTimeMillis() - hours * 60L * 60 * 1000;
+        byte[] copy;
+        long last;
+        synchronized (lock) {
+            if (buffer == null) throw new IOException("Log file not mapped");
+            last = sequence;
+            copy = new byte[CAPACITY * RECORD];
+            buffer.position(HEADER);
+            buffer.get(copy);
+            buffer.position(0);
+        }
+
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Could not create " + dir);
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        File out = new File(dir, EXPORT_PREFIX + stamp + ".txt");
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        ByteBuffer records = ByteBuffer.wrap(copy);
+        try (Writer writer = new FileWriter(out)) {
+            for (long seq = Math.max(0, last - CAPACITY); seq < last; seq++) {
+                int base = (int) (seq % CAPACITY) * RECORD;
+                long time = records.getLong(base);
+                if (time < since) continue;
+                int length = Math.min(copy[base + 9] & 0xff, TEXT_MAX);
+                writer.write(format.format(new Date(time)));
+                writer.write(' ');
+                writer.write(levelChar(copy[base + 8]));
+                writer.write(' ');
+                writer.write(new String(copy, base + 10, length, "US-ASCII"));
+                writer.write('\n');
+            }
+        }
+        pruneExports(dir);
+        return out;
+    }
+
+    private static void pruneExports(File dir) {
+        File[] exports = dir.listFiles((d, name) -> name.startsWith(EXPORT_PREFIX));
+        if (exports == null || exports.length <= MAX_EXPORTS) return;
+        Arrays.sort(exports, (a, b) -> b.getName().compareTo(a.getName())); // Newest first
+        for (int i = MAX_EXPORTS; i < exports.length; i++) exports[i].delete();
+    }
+
+    private static char levelChar(int level) {
+        switch (level) {
+            case Log.VERBOSE: return 'V';
+            case Log.DEBUG: return 'D';
+            case Log.INFO: return 'I';
+            case Log.WARN: return 'W';
+            default: return 'E';
+        }
+    }
+}
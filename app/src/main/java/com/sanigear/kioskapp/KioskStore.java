@@ -0,0 +1,166 @@
+package com.sanigear.kioskapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.sanigear.kioskapp.core.AppendLogStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * All persistent kiosk state in one place: an {@link AppendLogStore} in files/kiosk_store.log,
+ * loaded once per process. Reads are map lookups and writes are coalesced and appended in the
+ * background, so both are fine on the main thread. Keys are typed constants below.
+ * <p>
+ * SharedPreferences files from older versions (webview_prefs, update_prefs, kiosk_prefs and
+ * power_prefs) are imported and deleted on startup. An admin can still push a settings file
+ * into shared_prefs/ with adb and it is picked up by the next start.
+ */
+public final class KioskStore {
+
+    private static final String TAG = "KioskStore";
+    private static final String FILE_NAME = "kiosk_store.log";
+
+    public static final class Key<T> {
+        final String name;
+        final Class<T> type;
+        final T defaultValue;
+
+        Key(String name, Class<T> type, T defaultValue) {
+            this.name = name;
+            this.type = type;
+            this.defaultValue = defaultValue;
+        }
+    }
+
+    // WebView
+    public static final Key<String> LAST_URL = new Key<>("last_url", String.class, null);
+    public static final Key<Integer> LAST_SCROLL_Y = new Key<>("last_scroll_y", Integer.class, 0);
+    // Portal session
+    public static final Key<String> SESSION_URL = new Key<>("session_url", String.class, null);
+    public static final Key<Long> SESSION_EXPIRES_AT = new Key<>("session_expires_at", Long.class, 0L);
+    public static final Key<Integer> SESSION_TTL_MINUTES = new Key<>("session_ttl_minutes", Integer.class, 6 * 60);
+    // Portal session cookie name; null picks session-like cookie names
+    public static final Key<String> SESSION_COOKIE_NAME = new Key<>("session_cookie_name", String.class, null);
+    // Startup
+    public static final Key<Boolean> FIRST_LAUNCH_DONE = new Key<>("first_launch_done", Boolean.class, false);
+    // Updates
+    public static final Key<String> RELEASES_URL = new Key<>("releases_url", String.class, null);
+    public static final Key<String> RELEASE_ETAG = new Key<>("release_etag", String.class, null);
+    public static final Key<String> RELEASE_JSON = new Key<>("release_json", String.class, null);
+    public static final Key<Long> LAST_UPDATE_CHECK = new Key<>("last_check", Long.class, 0L);
+    public static final Key<String> STAGED_APK = new Key<>("staged_apk", String.class, null);
+    public static final Key<String> STAGED_VERSION = new Key<>("staged_version", String.class, null);
+    public static final Key<String> STAGED_SHA256 = new Key<>("staged_sha256", String.class, null);
+    public static final Key<Integer> MAINTENANCE_START = new Key<>("maintenance_start", Integer.class, 2 * 60);
+    public static final Key<Integer> MAINTENANCE_END = new Key<>("maintenance_end", Integer.class, 5 * 60);
+    public static final Key<Boolean> PEER_UPDATES = new Key<>("peer_updates", Boolean.class, false);
+    public static final Key<String> INSTALLED_APK_SHA256 = new Key<>("installed_apk_sha256", String.class, null);
+    public static final Key<Long> INSTALLED_APK_STAMP = new Key<>("installed_apk_stamp", Long.class, 0L);
+    // Watchdog; set while the admin has unlocked the kiosk, so a restarted service stays paused
+    public static final Key<Boolean> WATCHDOG_PAUSED = new Key<>("watchdog_paused", Boolean.class, false);
+    // Power
+    public static final Key<Integer> LOW_POWER_LEVEL = new Key<>("low_power_level", Integer.class, 25);
+    public static final Key<Integer> LOW_POWER_HYSTERESIS = new Key<>("low_power_hysteresis", Integer.class, 5);
+    // Metrics
+    public static final Key<String> METRICS_SNAPSHOT = new Key<>("metrics_snapshot", String.class, null);
+
+    // Which prefs file each key used to live in; the pref name is the key name, except "lastUrl"
+    private static final Key<?>[] WEBVIEW_PREFS = {LAST_URL};
+    private static final Key<?>[] KIOSK_PREFS = {FIRST_LAUNCH_DONE};
+    private static final Key<?>[] UPDATE_PREFS = {FIRST_LAUNCH_DONE, RELEASES_URL, RELEASE_ETAG, RELEASE_JSON,
+            LAST_UPDATE_CHECK, STAGED_APK, STAGED_VERSION, STAGED_SHA256, MAINTENANCE_START, MAINTENANCE_END,
+            PEER_UPDATES, INSTALLED_APK_SHA256, INSTALLED_APK_STAMP};
+    private static final Key<?>[] POWER_PREFS = {LOW_POWER_LEVEL, LOW_POWER_HYSTERESIS};
+
+    private static KioskStore instance;
+
+    private final AppendLogStore store;
+
+    private KioskStore(AppendLogStore store) {
+        this.store = store;
+    }
+
+    public static synchronized KioskStore get(Context context) {
+        if (instance != null) return instance;
+        Context app = context.getApplicationContext();
+        long start = SystemClock.elapsedRealtime();
+        File file = new File(app.getFilesDir(), FILE_NAME);
+        AppendLogStore store;
+        try {
+            store = AppendLogStore.open(file);
+        } catch (IOException e) {
+            // Unreadable file: start over rather than leave the kiosk without settings
+            Log.e(TAG, "Could not open " + FILE_NAME + ", starting empty", e);
+            file.delete();
+            try {
+                store = AppendLogStore.open(file);
+            } catch (IOException again) {
+                throw new IllegalStateException("Kiosk store unavailable", again);
+            }
+        }
+        instance = new KioskStore(store);
+        instance.importPrefs(app);
+        Log.d(TAG, "Loaded in " + (SystemClock.elapsedRealtime() - start) + " ms, " + store.getLogSize() + " bytes");
+        return instance;
+    }
+
+    public <T> T get(Key<T> key) {
+        Object value = store.get(key.name);
+        if (value == null) return key.defaultValue;
+        if (key.type == Integer.class && value instanceof Long) value = ((Long) value).intValue();
+        return key.type.isInstance(value) ? key.type.cast(value) : key.defaultValue;
+    }
+
+    public boolean contains(Key<?> key) {
+        return store.contains(key.name);
+    }
+
+    public <T> void put(Key<T> key, T value) {
+        store.put(key.name, value);
+    }
+
+    public void remove(Key<?> key) {
+        store.put(key.name, null);
+    }
+
+    /**
+     * Writes pending values right away, e.g. just before the app is replaced by an update.
+     */
+    public void flush() {
+        try {
+            store.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Flush failed", e);
+        }
+    }
+
+    private void importPrefs(Context context) {
+        // The first-launch flag was written to update_prefs but read from kiosk_prefs; either counts
+        importPrefs(context, "kiosk_prefs", KIOSK_PREFS);
+        importPrefs(context, "update_prefs", UPDATE_PREFS);
+        importPrefs(context, "webview_prefs", WEBVIEW_PREFS);
+        importPrefs(context, "power_prefs", POWER_PREFS);
+    }
+
+    private void importPrefs(Context context, String name, Key<?>[] keys) {
+        File xml = new File(context.getDataDir(), "shared_prefs/" + name + ".xml");
+        if (!xml.isFile()) return; // The usual case, no XML parsing at all
+        SharedPreferences prefs = context.getSharedPreferences(name, Context.MODE_PRIVATE);
+        Map<String, ?> all = prefs.getAll();
+        int imported = 0;
+        for (Key<?> key : keys) {
+            String prefName = key == LAST_URL ? "lastUrl" : key.name;
+            Object value = all.get(prefName);
+            if (value == null || (key == FIRST_LAUNCH_DONE && !Boolean.TRUE.equals(value))) continue;
+            store.put(key.name, value);
+            imported++;
+        }
+        context.deleteSharedPreferences(name);
+        Log.d(TAG, "Imported " + imported + " values from " + name);
+    }
+}
@@ -5,20 +5,13 @@ import android.app.ActivityManager;
 import android.app.AlertDialog;
 import android.app.AppOpsManager;
 import android.app.admin.DevicePolicyManager;
-import android.app.usage.UsageEvents;
-import android.app.usage.UsageStatsManager;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.graphics.Color;
 import android.media.MediaPlayer;
-import android.net.ConnectivityManager;
-import android.net.Network;
-import android.net.NetworkCapabilities;
-import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -36,9 +29,7 @@ import android.view.animation.Animation;
 import android.view.animation.TranslateAnimation;
 import android.webkit.CookieManager;
 import android.webkit.WebChromeClient;
-import android.webkit.WebResourceRequest;
 import android.webkit.WebView;
-import android.webkit.WebViewClient;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.FrameLayout;
@@ -49,20 +40,12 @@ import android.widget.Toast;
 
 import androidx.core.content.FileProvider;
 
-import java.io.BufferedInputStream;
+import com.sanigear.kioskapp.core.PackagePolicy;
+import com.sanigear.kioskapp.core.PdfCache;
+
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
-
-import android.content.IntentFilter;
-import android.os.BatteryManager;
+import java.util.concurrent.Future;
 
 /**
  * MainActivity for Sanigear Kiosk App
@@ -71,19 +54,32 @@ import android.os.BatteryManager;
 public class MainActivity extends Activity {
 
     private static final String TAG = "KioskApp";
-    private static final String ALLOWED_DOMAIN = "automation.sanigear.app";
-    private static final String KIOSK_PACKAGE = "com.sanigear.kioskapp";
+    private static final String LOGIN_URL = SecureWebViewClient.PORTAL_ORIGIN + "/a/login";
+    private static final String KIOSK_PACKAGE = PackagePolicy.KIOSK_PACKAGE;
+    private static final String ADMIN_PIN = "0710";
+    private static final int LOG_EXPORT_HOURS = 8;
+    private static final long PDF_TIMEOUT = 2 * 60 * 1000;
+    private static final long EXPORT_TIMEOUT = 30 * 1000;
 
     // Layout components
     private FrameLayout layout;
     private LinearLayout toolbar;
 
     private TextView batteryText;
-    private Handler batteryHandler = new Handler();
+    private PowerMonitor powerMonitor;
+    private SessionManager sessionManager;
 
     private View batteryFill;
     private WebView webView;
-    private WebView popupWebView;
+    private WebViewManager webViewManager;
+    private PortalAssetCache assetCache;
+    private PopupWebViewPool popupPool;
+    private PdfViewer pdfViewer;
+    private PdfCache pdfCache;
+    private PdfPrinter pdfPrinter;
+    private String pdfDownloadKey;
+    private ConnectivityMonitor connectivityMonitor;
+    private static final long PDF_CACHE_BYTES = 50L * 1024 * 1024; // 50 MB
 
     // Admin control
     private boolean kioskModeDisabledByAdmin = false;
@@ -96,25 +92,39 @@ public class MainActivity extends Activity {
     private Runnable watchdogChecker;
     private static final long CHECK_INTERVAL = 3000; // 3 seconds
 
-    private static final Set<String> WHITELISTED_PACKAGES = new HashSet<>(Arrays.asList(
-            "com.sanigear.kioskapp",
-            "com.adobe.reader",
-            "com.android.printspooler",
-            "com.android.bips",
-            "com.google.android.printservice.recommendation",
-            "com.google.android.packageinstaller",
-            "com.android.settings"
-    ));
-
     /**
      * Initializes activity layout and kiosk controls.
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTimer.begin(StartupTimer.WARM); // No-op if the splash already started the run
+        StartupTimer.mark("MainActivity created");
         layout = new FrameLayout(this);
         setContentView(layout);
 
+        // Cached PDFs live in their own folder; only leftover temp files from older versions are cleared
+        pdfCache = new PdfCache(new File(getCacheDir(), "pdf_cache"), PDF_CACHE_BYTES, HttpTransport.get(),
+                KioskStore.get(this).get(KioskStore.SESSION_COOKIE_NAME), new PdfCacheLog());
+        deleteExistingPdfs();
+        pdfPrinter = new PdfPrinter(new File(getCacheDir(), "print_queue"));
+
+        assetCache = new PortalAssetCache(this, "/a/login");
+        sessionManager = new SessionManager(this, LOGIN_URL);
+        sessionManager.start();
+        webViewManager = new WebViewManager(this, new PopupChromeClient(), assetCache, sessionManager);
+        webViewManager.setRendererGoneListener(this::showWebView);
+        popupPool = new PopupWebViewPool(this, layout, this::downloadAndOpenPDF);
+        popupPool.prewarm();
+        connectivityMonitor = new ConnectivityMonitor(this, this::onConnectivityChanged);
+        connectivityMonitor.start();
+        Metrics.startSnapshots(this);
+        KioskLog.init(this);
+        powerMonitor = new PowerMonitor(this, new KioskPowerListener());
+        webViewManager.setLowPower(PowerMonitor.isLowPower()); // Profile may outlive a recreated activity
+        KioskExecutor.get().submit(KioskExecutor.Lane.BACKGROUND, "update-schedule", 10000, null,
+                () -> UpdateJobService.schedule(this));
+
         disableStatusBar();
 
         // Device Owner & Kiosk enforcement
@@ -132,7 +142,10 @@ public class MainActivity extends Activity {
 
         // Load main content if online
         if (isNetworkAvailable()) {
-            showWebView();
+            showWebView(savedInstanceState);
+        } else if (assetCache.hasShell(LOGIN_URL)) {
+            // Render the last good login page from cache until the network is back
+            showWebView(savedInstanceState);
         } else {
             showOfflineMessage();
         }
@@ -163,33 +176,14 @@ public class MainActivity extends Activity {
      * Determines which app is currently in the foreground.
      */
     private String getForegroundApp() {
-        UsageStatsManager usm = (UsageStatsManager) getSystemService(Context.USAGE_STATS_SERVICE);
-        if (usm == null) return null;
-
-        long now = System.currentTimeMillis();
-        UsageEvents events = usm.queryEvents(now - 5000, now);
-        UsageEvents.Event event = new UsageEvents.Event();
-        String lastApp = null;
-
-        while (events.hasNextEvent()) {
-            events.getNextEvent(event);
-            if (event.getEventType() == UsageEvents.Event.MOVE_TO_FOREGROUND) {
-                lastApp = event.getPackageName();
-            }
-        }
-        return lastApp;
+        return ForegroundAppTracker.getInstance(this).poll();
     }
 
     /**
      * App whitelist used to allow Adobe Reader and Kiosk app itself.
      */
     private boolean isAppWhitelisted(String packageName) {
-        for (String allowed : WHITELISTED_PACKAGES) {
-            if (packageName.equals(allowed) || packageName.startsWith(allowed + ".")) {
-                return true;
-            }
-        }
-        return false;
+        return PackagePolicy.kiosk().isAllowed(packageName);
     }
     /**
      * Forces the app back to MainActivity (Kiosk Home).
@@ -247,12 +241,7 @@ public class MainActivity extends Activity {
         DevicePolicyManager dpm = (DevicePolicyManager) getSystemService(Context.DEVICE_POLICY_SERVICE);
 
         if (dpm != null && dpm.isDeviceOwnerApp(getPackageName())) {
-            dpm.setLockTaskPackages(adminComponent, new String[]{
-                    getPackageName(),
-                    "com.google.android.packageinstaller",
-                    "com.android.settings",
-                    "com.android.systemui"
-            });
+            dpm.setLockTaskPackages(adminComponent, PackagePolicy.lockTaskPackages());
 
             if (dpm.isLockTaskPermitted(getPackageName())) {
                 try {
@@ -288,7 +277,7 @@ public class MainActivity extends Activity {
             if (webView != null && webView.canGoBack()) webView.goBack();
         });
         addButton("Refresh", v -> {
-            if (isNetworkAvailable()) showWebView();
+            if (isNetworkAvailable()) refreshWebView();
             else Toast.makeText(this, "Still no internet.", Toast.LENGTH_SHORT).show();
         });
         addButton("Connections", v -> showConnectionsDialog());
@@ -336,8 +325,11 @@ public class MainActivity extends Activity {
 // Add to toolbar
         toolbar.addView(batteryContainer);
 
-        updateBatteryText();
-        startBatteryMonitor();
+        // The sticky battery broadcast fills this in on the first start; later toolbars reuse the last reading
+        if (powerMonitor.getLevel() >= 0) {
+            updateBatteryText(powerMonitor.getLevel(), powerMonitor.isCharging());
+        }
+        powerMonitor.start();
 
         FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
                 ViewGroup.LayoutParams.WRAP_CONTENT,
@@ -392,121 +384,179 @@ public class MainActivity extends Activity {
         }
     }
 
-    // Initialize main WebView and support for popup windows
+    // Empties the content area; popups and the PDF viewer are closed through their owners so they
+    // don't keep running detached
+    private void clearLayout() {
+        closePdfViewer();
+        popupPool.closeAll();
+        layout.removeAllViews();
+    }
+
+    // Attach the long-lived WebView and load the portal if nothing is showing yet
     private void showWebView() {
-        webView = new WebView(this);
-        webView.getSettings().setJavaScriptEnabled(true);
-        webView.getSettings().setDomStorageEnabled(true);
-        webView.getSettings().setAllowFileAccess(true);
-        webView.getSettings().setAllowContentAccess(true);
-        webView.getSettings().setJavaScriptCanOpenWindowsAutomatically(true);
-        webView.getSettings().setSupportMultipleWindows(true);
-
-        webView.setWebChromeClient(new WebChromeClient() {
-            @Override
-            public boolean onCreateWindow(WebView view, boolean isDialog, boolean isUserGesture, Message resultMsg) {
-                WebView newWebView = new WebView(MainActivity.this);
-                newWebView.getSettings().setJavaScriptEnabled(true);
-                newWebView.getSettings().setDomStorageEnabled(true);
-                newWebView.setWebViewClient(new WebViewClient() {
-                    @Override
-                    public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
-                        String url = request.getUrl().toString();
-                        if (url.endsWith(".pdf")) {
-                            downloadAndOpenPDF(url);
-                            return true;
-                        }
-                        return false;
-                    }
-                });
-                popupWebView = newWebView;
-                layout.addView(popupWebView);
-                WebView.WebViewTransport transport = (WebView.WebViewTransport) resultMsg.obj;
-                transport.setWebView(newWebView);
-                resultMsg.sendToTarget();
-                return true;
+        showWebView(null);
+    }
+
+    private void showWebView(Bundle savedInstanceState) {
+        webView = webViewManager.getWebView();
+        if (webView.getParent() != layout) {
+            clearLayout();
+            layout.addView(webView);
+            setupToolbar();
+        }
+        if (!webViewManager.hasContent() && !webViewManager.restoreState(savedInstanceState)) {
+            // Straight back to the last authenticated page while the session is valid.
+            // Offline, only the cached login shell can render.
+            String url = isNetworkAvailable() ? sessionManager.startUrl() : LOGIN_URL;
+            KioskStore store = KioskStore.get(this);
+            if (url.equals(store.get(KioskStore.LAST_URL))) {
+                webViewManager.load(url, store.get(KioskStore.LAST_SCROLL_Y));
+            } else {
+                webViewManager.load(url);
             }
-        });
+        }
+    }
 
-        webView.setWebViewClient(new SecureWebViewClient());
-        layout.removeAllViews();
-        layout.addView(webView);
-        webView.loadUrl("https://" + ALLOWED_DOMAIN + "/a/login");
-        setupToolbar();
+    // Reload the existing page, or bring the WebView back after the offline message
+    private void refreshWebView() {
+        if (webView != null && webView.getParent() == layout) {
+            webViewManager.reload();
+        } else {
+            showWebView();
+        }
+    }
+
+    // Support for popup windows opened by the portal
+    private class PopupChromeClient extends WebChromeClient {
+        @Override
+        public boolean onCreateWindow(WebView view, boolean isDialog, boolean isUserGesture, Message resultMsg) {
+            return popupPool.onCreateWindow(resultMsg);
+        }
+    }
+
+    // Logs cache outcomes and records download throughput
+    private class PdfCacheLog implements PdfCache.Listener {
+        @Override
+        public void onHit(String url) {
+            Log.d("PdfCache", "Cache hit (304) " + counters());
+        }
+
+        @Override
+        public void onMiss(String url, long bytes, long elapsedMs) {
+            if (elapsedMs > 0) Metrics.histogram(Metrics.PDF_BYTES_PER_SEC).record(bytes * 1000 / elapsedMs);
+            Log.d("PdfCache", "Cache miss " + counters());
+        }
+
+        @Override
+        public void onStale(String url, IOException cause) {
+            Log.w("PdfCache", "Revalidation failed, serving cached copy", cause);
+        }
+
+        // Counters only: stats() lists the cache directory, too slow to do on every request
+        private String counters() {
+            return "hits=" + pdfCache.getHits() + " misses=" + pdfCache.getMisses()
+                    + " stale=" + pdfCache.getStaleServes();
+        }
     }
 
-    // Handle PDF download and launch
+    // Handle PDF download and show it in the built-in viewer
     private void downloadAndOpenPDF(String urlStr) {
-        new Thread(() -> {
-            File pdfFile = null;
+        // Repeated taps on the same link while it downloads are ignored
+        if (KioskExecutor.get().isInFlight(urlStr)) {
+            if (pdfViewer == null) Toast.makeText(this, "Still loading, please wait", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        PdfViewer viewer = showPdfViewer(Uri.parse(urlStr).getLastPathSegment());
+        pdfDownloadKey = urlStr;
+        Future<?> download = KioskExecutor.get().submit(KioskExecutor.Lane.INTERACTIVE, urlStr, PDF_TIMEOUT, this, () -> {
             try {
-                URL url = new URL(urlStr);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestProperty("User-Agent", "Mozilla/5.0");
                 String cookie = CookieManager.getInstance().getCookie(urlStr);
-                if (cookie != null) conn.setRequestProperty("Cookie", cookie);
-                conn.connect();
-
-                if (conn.getResponseCode() != HttpURLConnection.HTTP_OK)
-                    throw new IOException("HTTP error: " + conn.getResponseCode());
-
-                deleteExistingPdfs();
-                pdfFile = File.createTempFile("temp_", ".pdf", getCacheDir());
-                Log.d("PDFHandlerDelete", "Temp PDF created at: " + pdfFile.getAbsolutePath());
+                File pdfFile = pdfCache.fetch(urlStr, cookie, viewer::onDownloadProgress);
 
-                try (InputStream in = new BufferedInputStream(conn.getInputStream());
-                     OutputStream out = new FileOutputStream(pdfFile)) {
-                    byte[] buffer = new byte[8192];
-                    int len;
-                    while ((len = in.read(buffer)) > 0) out.write(buffer, 0, len);
+                try {
+                    viewer.open(pdfFile);
+                } catch (IOException e) {
+                    // PdfRenderer can't handle this file (e.g. password protected), use an external app
+                    Log.w("PDFHandler", "Built-in viewer failed, falling back to external viewer", e);
+                    runOnUiThread(() -> {
+                        if (pdfViewer == viewer) closePdfViewer();
+                        openPdfExternally(pdfFile);
+                    });
                 }
 
-                Uri uri = FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", pdfFile);
-                Intent intent = new Intent(Intent.ACTION_VIEW);
-                intent.setDataAndType(uri, "application/pdf");
-                intent.setFlags(Intent.FLAG_ACTIVITY_NO_HISTORY | Intent.FLAG_GRANT_READ_URI_PERMISSION);
-                stopLockTask();
-                isInPdfViewer = true;
-                startService(new Intent(this, AppWatchdogService.class));
-                startActivity(intent);
-
             } catch (Exception e) {
                 Log.e("PDFHandler", "Failed to open PDF", e);
-                runOnUiThread(() -> Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
-                if (pdfFile != null) pdfFile.delete();
+                runOnUiThread(() -> {
+                    if (pdfViewer != viewer) return; // Closed or replaced, nobody is waiting on it
+                    Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                    closePdfViewer();
+                });
             }
-        }).start();
+        });
+        if (download.isCancelled() && pdfViewer == viewer) {
+            // Lane full, the download never started
+            Toast.makeText(this, "Too busy, please try again", Toast.LENGTH_SHORT).show();
+            closePdfViewer();
+        }
     }
 
-    // Removes previously downloaded PDFs
-    private void deleteExistingPdfs() {
-        File cacheDir = getCacheDir();
-        if (cacheDir == null) {
-            Log.d("PDFHandlerDelete", "Cache dir is null.");
-            return;
+    // Overlays the built-in PDF viewer on top of the WebView, staying in lock task mode; it prints
+    // through PdfPrinter, so the print dialog opens without leaving lock task mode either
+    private PdfViewer showPdfViewer(String title) {
+        closePdfViewer();
+        pdfViewer = new PdfViewer(this, title != null ? title : "PDF", pdfPrinter, this::closePdfViewer);
+        layout.addView(pdfViewer, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.MATCH_PARENT,
+                FrameLayout.LayoutParams.MATCH_PARENT));
+        return pdfViewer;
+    }
+
+    private void closePdfViewer() {
+        if (pdfViewer == null) return;
+        // Stops a download nobody is waiting for anymore
+        KioskExecutor.get().cancel(pdfDownloadKey);
+        pdfDownloadKey = null;
+        pdfViewer.close();
+        layout.removeView(pdfViewer);
+        pdfViewer = null;
+    }
+
+    // Legacy path: hand the file to an external PDF app outside lock task mode
+    private void openPdfExternally(File pdfFile) {
+        try {
+            Uri uri = FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", pdfFile);
+            Intent intent = new Intent(Intent.ACTION_VIEW);
+            intent.setDataAndType(uri, "application/pdf");
+            intent.setFlags(Intent.FLAG_ACTIVITY_NO_HISTORY | Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            stopLockTask();
+            isInPdfViewer = true;
+            AppWatchdogService.sendCommand(this, AppWatchdogService.ACTION_BOOST);
+            startActivity(intent);
+        } catch (Exception e) {
+            Log.e("PDFHandler", "Failed to open PDF externally", e);
+            Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
         }
+    }
 
-        Log.d("PDFHandlerDelete", "Cache path: " + cacheDir.getAbsolutePath());
+    // Removes temp PDFs left in the cache root by earlier versions
+    private void deleteExistingPdfs() {
+        File cacheDir = getCacheDir();
+        if (cacheDir == null) return;
 
         File[] files = cacheDir.listFiles();
-        if (files == null || files.length == 0) {
-            Log.d("PDFHandlerDelete", "No files found in cache.");
-            return;
-        }
+        if (files == null) return;
 
+        int deleted = 0;
         for (File f : files) {
-            Log.d("PDFHandlerDelete", "Found file: " + f.getName());
-            if (f.getName().endsWith(".pdf")) {
-                Log.d("PDFHandlerDelete", "Deleting file: " + f.getName());
-                boolean deleted = f.delete();
-                Log.d("PDFHandlerDelete", "Deleted: " + deleted);
-            }
+            if (f.getName().endsWith(".pdf") && f.delete()) deleted++;
         }
+        if (deleted > 0) KioskLog.d("PDFHandlerDelete", "Deleted leftover PDFs:", deleted);
     }
 
     // Shows offline message if Wi-Fi or data is unavailable
     private void showOfflineMessage() {
-        layout.removeAllViews();
+        StartupTimer.abandon("offline"); // No page will finish; don't hold back later runs
+        clearLayout();
         TextView msg = new TextView(this);
         msg.setText("No internet connection. \nPlease connect to Wi-Fi.");
         msg.setGravity(Gravity.CENTER);
@@ -520,16 +570,21 @@ public class MainActivity extends Activity {
 
     // Check if network connection is active
     private boolean isNetworkAvailable() {
-        ConnectivityManager cm = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-        if (cm == null) return false;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            Network net = cm.getActiveNetwork();
-            NetworkCapabilities caps = cm.getNetworkCapabilities(net);
-            return caps != null && (caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)
-                    || caps.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR));
+        return connectivityMonitor.isConnected();
+    }
+
+    // Debounced network changes; brings the portal back without anyone tapping Refresh
+    private void onConnectivityChanged(ConnectivityMonitor.State previous, ConnectivityMonitor.State current,
+                                       boolean metered) {
+        if (current != ConnectivityMonitor.State.VALIDATED || previous == ConnectivityMonitor.State.VALIDATED) {
+            return;
+        }
+        HttpTransport.get().preconnect(LOGIN_URL);
+        if (webView == null || webView.getParent() != layout) {
+            Log.d(TAG, "Network validated, leaving the offline message");
+            showWebView();
         } else {
-            NetworkInfo info = cm.getActiveNetworkInfo();
-            return info != null && info.isConnected();
+            webViewManager.onNetworkRestored();
         }
     }
     private void promptUserToSelectLauncher() {
@@ -560,48 +615,52 @@ public class MainActivity extends Activity {
     }
     protected void onPause() {
         super.onPause();
-        Log.d("POGI", "ONPAUSE");
+        webViewManager.onPause();
 
-        // Save WebView state (scroll position or URL)
-        if (webView != null) {
-            // You can save the URL or WebView state here
-            String currentUrl = webView.getUrl();  // Save the current URL
-            Log.d("POGI", "webview NOT NULL ON PAUSE");
-            // You could also save other WebView state (like scrolling position) if necessary
-            // You can save it in SharedPreferences or any other persistent storage for later use
-            SharedPreferences prefs = getSharedPreferences("webview_prefs", MODE_PRIVATE);
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putString("lastUrl", currentUrl);
-            Log.d("POGI", currentUrl);
-            editor.apply();
+        // Where to pick up after a restart; unchanged values cost nothing
+        if (webView != null && webView.getUrl() != null) {
+            KioskStore store = KioskStore.get(this);
+            store.put(KioskStore.LAST_URL, webView.getUrl());
+            store.put(KioskStore.LAST_SCROLL_Y, webView.getScrollY());
         }
+        SessionManager.flush();
     }
 
     protected void onStart() {
         super.onStart();
-        Log.d("POGI", "MainActivity started");
+        KioskLog.d(TAG, "MainActivity started");
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        StartupTimer.abandon("stopped before the first page");
+    }
+
+    @Override
+    protected void onRestart() {
+        super.onRestart();
+        if (isInPdfViewer) {
+            // Back from the external PDF app
+            isInPdfViewer = false;
+            StartupTimer.begin(StartupTimer.RESUME_FROM_PDF);
+        }
     }
     @Override
     protected void onResume() {
         super.onResume();
-        Log.d("POGI", "MainActivity resumed");
+        KioskLog.d(TAG, "MainActivity resumed");
 
-        // Retrieve the saved WebView state (if needed)
-        SharedPreferences prefs = getSharedPreferences("webview_prefs", MODE_PRIVATE);
-        String lastUrl = prefs.getString("lastUrl", null);
-
-        // If we have a saved URL, restore it in the WebView
-        if (webView != null && lastUrl != null) {
-            Log.d("POGI", "OnRESUME LOAD URL");
-            webView.loadUrl(lastUrl);  // Load the saved URL
-        }
+        // Keep the current page; only reloads if it went stale or the network changed
+        webViewManager.onResume();
         ensureDefaultLauncher();
 
-        Log.d("POGI", "Resuming, ensuring watchdog service is running");
-
         // Start the AppWatchdogService (this is sufficient, no need to start an additional watchdog)
-        Intent watchdog = new Intent(this, AppWatchdogService.class);
-        startService(watchdog);
+        if (kioskModeDisabledByAdmin) {
+            startService(new Intent(this, AppWatchdogService.class));
+        } else {
+            AppWatchdogService.sendCommand(this, AppWatchdogService.ACTION_RESUME);
+        }
 
         // Restart lock task if needed
         if (!kioskModeDisabledByAdmin) {
@@ -609,7 +668,7 @@ public class MainActivity extends Activity {
             if (dpm != null && dpm.isDeviceOwnerApp(getPackageName()) &&
                     dpm.isLockTaskPermitted(getPackageName())) {
                 try {
-                    Log.d("POGI", "Re-entering Lock Task Mode");
+                    KioskLog.d(TAG, "Re-entering lock task mode");
                     startLockTask();
                 } catch (Exception e) {
                     Log.e("POGI", "Failed to resume lock task", e);
@@ -617,21 +676,51 @@ public class MainActivity extends Activity {
             }
         }
 
-        // ✅ Reattach WebView if not present
-        if (webView != null) {
-            layout.removeAllViews(); // Ensure clean
-            layout.addView(webView);
-            setupToolbar();
+        // Ends a resume-from-PDF measurement once the kiosk has been drawn again
+        layout.post(() -> StartupTimer.onResumed(this));
+    }
 
-            webView.setVisibility(View.VISIBLE);
-            webView.reload(); // Refresh page if needed
-        }
+    @Override
+    public void onUserInteraction() {
+        super.onUserInteraction();
+        UpdateJobService.noteUserActivity(); // Holds back a scheduled install while someone is working
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        webViewManager.saveState(outState);
+    }
 
-        Utils.checkForUpdate(this);
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW) popupPool.trim(); // Spares are rebuilt on demand
+    }
+
+    @Override
+    protected void onDestroy() {
+        closePdfViewer();
+        popupPool.release();
+        KioskExecutor.get().cancelAll(this);
+        connectivityMonitor.stop();
+        powerMonitor.stop();
+        sessionManager.stop();
+        SessionManager.flush();
+        webViewManager.destroy();
+        super.onDestroy();
     }
 
     @Override
     public boolean dispatchKeyEvent(KeyEvent event) {
+        if (pdfViewer != null && event.getKeyCode() == KeyEvent.KEYCODE_BACK) {
+            if (event.getAction() == KeyEvent.ACTION_UP) closePdfViewer();
+            return true;
+        }
+        if (popupPool.hasPopups() && event.getKeyCode() == KeyEvent.KEYCODE_BACK) {
+            if (event.getAction() == KeyEvent.ACTION_UP) popupPool.closeTop();
+            return true;
+        }
         if (event.getAction() == KeyEvent.ACTION_DOWN && event.getKeyCode() == KeyEvent.KEYCODE_VOLUME_UP) {
             long now = System.currentTimeMillis();
             if (now - lastTapTime < 2000) tapCount++; else tapCount = 1;
@@ -651,13 +740,12 @@ public class MainActivity extends Activity {
         builder.setView(input);
 
         builder.setPositiveButton("Unlock", (dialog, which) -> {
-            if ("0710".equals(input.getText().toString())) {
+            if (ADMIN_PIN.equals(input.getText().toString())) {
                 kioskModeDisabledByAdmin = true;
                 stopLockTask();
 
-                // ✅ Use application context to stop the service properly
-                Intent stopIntent = new Intent(getApplicationContext(), AppWatchdogService.class);
-                getApplicationContext().stopService(stopIntent);
+                // ✅ Pause the watchdog so it doesn't pull the admin back into the kiosk
+                AppWatchdogService.sendCommand(getApplicationContext(), AppWatchdogService.ACTION_PAUSE);
 
                 // ✅ Now open the default launcher settings
                 Intent intent = new Intent(Settings.ACTION_HOME_SETTINGS);
@@ -670,11 +758,40 @@ public class MainActivity extends Activity {
             }
         });
 
+        builder.setNeutralButton("Export logs", (dialog, which) -> {
+            if (ADMIN_PIN.equals(input.getText().toString())) {
+                exportLogs();
+            } else {
+                Toast.makeText(this, "Incorrect PIN", Toast.LENGTH_SHORT).show();
+            }
+        });
+
         builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
 
         builder.show();
     }
 
+    // Writes the last hours of the kiosk log to the app's external files dir (Android/data/<package>/
+    // files/logs), where it can be pulled over USB or adb. The kiosk stays in lock task mode; no
+    // other app is opened, so there is nothing to escape through.
+    private void exportLogs() {
+        KioskExecutor.get().submit(KioskExecutor.Lane.INTERACTIVE, "log-export", EXPORT_TIMEOUT, this, () -> {
+            try {
+                File dir = getExternalFilesDir("logs");
+                if (dir == null) throw new IOException("External storage not available");
+                File export = KioskLog.export(dir, LOG_EXPORT_HOURS);
+                runOnUiThread(() -> new AlertDialog.Builder(this)
+                        .setTitle("Logs exported")
+                        .setMessage(export.getAbsolutePath())
+                        .setPositiveButton("OK", null)
+                        .show());
+            } catch (IOException e) {
+                Log.e(TAG, "Log export failed", e);
+                runOnUiThread(() -> Toast.makeText(this, "Log export failed", Toast.LENGTH_SHORT).show());
+            }
+        });
+    }
+
 
     private void showAboutDialog() {
 
@@ -773,6 +890,14 @@ public class MainActivity extends Activity {
                     });
                 }
 
+                @Override
+                public void onProgress(long bytesDone, long totalBytes, long bytesPerSecond) {
+                    if (totalBytes > 0) {
+                        updateBtn.setText("Downloading " + bytesDone * 100 / totalBytes + "% ("
+                                + bytesPerSecond / 1024 + " KB/s)");
+                    }
+                }
+
                 @Override
                 public void onError(Exception e) {
                     runOnUiThread(() -> {
@@ -791,22 +916,23 @@ public class MainActivity extends Activity {
 
         TextView watchdogStatus = new TextView(this);
         watchdogStatus.setGravity(Gravity.CENTER_HORIZONTAL);
+        watchdogStatus.setText(AppWatchdogService.getStatusSummary() + "\n" + webViewManager.getStatsSummary()
+                + "\n" + connectivityMonitor.getStatusSummary()
+                + "\n" + powerMonitor.getStatusSummary()
+                + "\n" + sessionManager.getStatusSummary()
+                + "\n" + popupPool.getStatusSummary());
         container.addView(watchdogStatus);
 
+        TextView metrics = new TextView(this);
+        metrics.setTextSize(11);
+        metrics.setPadding(0, spacingInPx, 0, 0);
+        metrics.setText(Metrics.getSummary());
+        container.addView(metrics);
+
         builder.setPositiveButton("Close", (dialog, which) -> dialog.dismiss());
         builder.show();
     }
 
-    private static class SecureWebViewClient extends WebViewClient {
-        @Override
-        public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
-            Uri uri = request.getUrl();
-            String url = uri.toString();
-            if (url.endsWith(".pdf")) return true;
-            return uri.getHost() == null || !uri.getHost().contains(ALLOWED_DOMAIN);
-        }
-    }
-
     private void disableStatusBar() {
         DevicePolicyManager dpm = (DevicePolicyManager) getSystemService(Context.DEVICE_POLICY_SERVICE);
         ComponentName adminComponent = new ComponentName(this, MyDeviceAdminReceiver.class);
@@ -822,31 +948,15 @@ public class MainActivity extends Activity {
         }
     }
 
-    private int getTabletBatteryPercent() {
-        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-        Intent batteryStatus = registerReceiver(null, filter);
-
-        if (batteryStatus == null) return -1;
-
-        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-
-        if (level < 0 || scale <= 0) return -1;
-
-        return (int) ((level / (float) scale) * 100);
-    }
-
-    private void updateBatteryText() {
+    private void updateBatteryText(int battery, boolean charging) {
         if (batteryText == null || batteryFill == null) return;
 
-        int battery = getTabletBatteryPercent();
-
         if (battery < 0) {
             batteryText.setText("?");
             return;
         }
 
-        batteryText.setText(battery + "%");
+        batteryText.setText(battery + "%" + (charging ? "+" : ""));
 
         // Adjust width based on battery %
         batteryFill.post(() -> {
@@ -855,12 +965,8 @@ public class MainActivity extends Activity {
 
             if (parentWidth <= 0) return;
 
-            int newWidth = (int) (parentWidth * (battery / 100f));
-
-            FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
-                    newWidth,
-                    FrameLayout.LayoutParams.MATCH_PARENT
-            );
+            ViewGroup.LayoutParams params = batteryFill.getLayoutParams();
+            params.width = (int) (parentWidth * (battery / 100f));
             batteryFill.setLayoutParams(params);
         });
 
@@ -874,15 +980,17 @@ public class MainActivity extends Activity {
         }
     }
 
-    private void startBatteryMonitor() {
-        batteryHandler.removeCallbacksAndMessages(null);
+    // Battery broadcasts: redraws the toolbar meter and applies the low-power profile
+    private class KioskPowerListener implements PowerMonitor.Listener {
+        @Override
+        public void onBatteryChanged(int level, boolean charging, int temperatureC) {
+            updateBatteryText(level, charging);
+        }
 
-        batteryHandler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                updateBatteryText();
-                batteryHandler.postDelayed(this, 60000);
-            }
-        }, 1000);
+        @Override
+        public void onLowPowerChanged(boolean lowPower) {
+            // The watchdog picks up the slower cadence on its next tick
+            webViewManager.setLowPower(lowPower);
+        }
     }
 }
@@ -0,0 +1,212 @@
+package com.sanigear.kioskapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters, gauges and latency histograms for the kiosk's hot paths.
+ * Recording is lock-free so it can sit on the watchdog tick and WebView callbacks; a snapshot is
+ * saved to the {@link KioskStore} every few minutes and shown in the About dialog.
+ */
+public final class Metrics {
+
+    private static final String TAG = "Metrics";
+    private static final long SNAPSHOT_INTERVAL = 5; // Minutes
+
+    // Metric names, units are part of the name
+    public static final String WATCHDOG_TICK_US = "watchdog.tick_us";
+    public static final String USAGE_QUERY_US = "usage.query_events_us";
+    public static final String WATCHDOG_RECOVERIES = "watchdog.recoveries";
+    public static final String WATCHDOG_INTERVAL_MS = "watchdog.interval_ms";
+    public static final String PAGE_LOAD_MS = "webview.page_load_ms";
+    public static final String PDF_BYTES_PER_SEC = "pdf.download_bytes_per_sec";
+    public static final String UPDATE_CHECK_MS = "update.check_ms";
+    public static final String LOCK_TASK_ENTERED = "lock_task.entered";
+    public static final String LOCK_TASK_EXITED = "lock_task.exited";
+
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService snapshotter;
+
+    private Metrics() {}
+
+    public static Counter counter(String name) {
+        Counter counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public static Gauge gauge(String name) {
+        Gauge gauge = gauges.get(name);
+        return gauge != null ? gauge : gauges.computeIfAbsent(name, n -> new Gauge());
+    }
+
+    public static Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    public static final class Gauge {
+        private final AtomicLong value = new AtomicLong();
+
+        public void set(long v) {
+            value.set(v);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Power-of-two buckets: bucket i holds values below 2^i, so percentiles are accurate to a factor of two.
+     */
+    public static final class Histogram {
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long value) {
+            if (value < 0) value = 0;
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            sum.add(value);
+            long previous;
+            while (value > (previous = max.get()) && !max.compareAndSet(previous, value)) {
+                // Retry until this value or a larger one is stored
+            }
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long mean() {
+            long n = count.sum();
+            return n > 0 ? sum.sum() / n : 0;
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile (0-100).
+         */
+        public long percentile(int p) {
+            long n = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) n += snapshot[i] = buckets.get(i);
+            if (n == 0) return 0;
+            long rank = (n * p + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+            }
+            return max.get();
+        }
+    }
+
+    /**
+     * Starts writing snapshots in the background. Safe to call from every component that records.
+     */
+    public static synchronized void startSnapshots(Context context) {
+        if (snapshotter != null) return;
+        KioskStore store = KioskStore.get(context);
+        snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "KioskMetrics");
+            t.setDaemon(true);
+            return t;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> store.put(KioskStore.METRICS_SNAPSHOT, snapshot().toString()),
+                SNAPSHOT_INTERVAL, SNAPSHOT_INTERVAL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * All metrics as one compact JSON object.
+     */
+    public static JSONObject snapshot() {
+        JSONObject root = new JSONObject();
+        try {
+            root.put("ts", System.currentTimeMillis());
+            JSONObject c = new JSONObject();
+            for (Map.Entry<String, Counter> e : new TreeMap<>(counters).entrySet()) c.put(e.getKey(), e.getValue().get());
+            root.put("counters", c);
+            JSONObject g = new JSONObject();
+            for (Map.Entry<String, Gauge> e : new TreeMap<>(gauges).entrySet()) g.put(e.getKey(), e.getValue().get());
+            root.put("gauges", g);
+            JSONObject h = new JSONObject();
+            for (Map.Entry<String, Histogram> e : new TreeMap<>(histograms).entrySet()) {
+                Histogram hist = e.getValue();
+                JSONObject o = new JSONObject();
+                o.put("n", hist.count());
+                o.put("mean", hist.mean());
+                o.put("p50", hist.percentile(50));
+                o.put("p95", hist.percentile(95));
+                o.put("max", hist.max());
+                h.put(e.getKey(), o);
+            }
+            root.put("histograms", h);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not build snapshot", e);
+        }
+        return root;
+    }
+
+    /**
+     * One line per metric, for the About dialog.
+     */
+    public static String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Counter> e : new TreeMap<>(counters).entrySet()) {
+            sb.append(e.getKey()).append(' ').append(e.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, Gauge> e : new TreeMap<>(gauges).entrySet()) {
+            sb.append(e.getKey()).append(' ').append(e.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(histograms).entrySet()) {
+            Histogram h = e.getValue();
+            sb.append(e.getKey())
+                    .append(" n=").append(h.count())
+                    .append(" p50=").append(h.percentile(50))
+                    .append(" p95=").append(h.percentile(95))
+                    .append(" max=").append(h.max())
+                    .append('\n');
+        }
+        return sb.length() > 0 ? sb.substring(0, sb.length() - 1) : "No metrics yet";
+    }
+}
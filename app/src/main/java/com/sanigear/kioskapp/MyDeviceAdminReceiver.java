@@ -5,4 +5,14 @@ import android.content.Context;
 import android.content.Intent;
 
 public class MyDeviceAdminReceiver extends DeviceAdminReceiver {
+
+    @Override
+    public void onLockTaskModeEntering(Context context, Intent intent, String pkg) {
+        Metrics.counter(Metrics.LOCK_TASK_ENTERED).increment();
+    }
+
+    @Override
+    public void onLockTaskModeExiting(Context context, Intent intent) {
+        Metrics.counter(Metrics.LOCK_TASK_EXITED).increment();
+    }
 }
@@ -0,0 +1,289 @@
+package com.sanigear.kioskapp;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.pdf.PdfDocument;
+import android.graphics.pdf.PdfRenderer;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.print.PageRange;
+import android.print.PrintAttributes;
+import android.print.PrintDocumentAdapter;
+import android.print.PrintDocumentInfo;
+import android.print.PrintManager;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Prints downloaded PDFs through the system PrintManager without leaving the kiosk, replacing
+ * the hand-off to an external PDF app outside lock task mode. The print spooler is a lock task
+ * package, so the print dialog opens on top of the kiosk.
+ * <p>
+ * Documents can be queued and sent as one job. A single document is streamed to the printer
+ * byte for byte. A batch is merged by drawing each page into one PDF, one page in memory at a
+ * time, at {@link #BATCH_DPI}. Android has no API to join PDFs without redrawing them.
+ */
+public class PdfPrinter {
+
+    private static final String TAG = "PdfPrinter";
+    private static final long LAYOUT_TIMEOUT = 30 * 1000;
+    private static final long WRITE_TIMEOUT = 5 * 60 * 1000;
+    static final int BATCH_DPI = 200;
+
+    // Queued documents are copied so the PDF cache can evict the originals meanwhile
+    private final File queueDir;
+    private final List<File> queue = new ArrayList<>();
+    private final List<String> titles = new ArrayList<>();
+
+    public PdfPrinter(File queueDir) {
+        this.queueDir = queueDir;
+        if (!queueDir.isDirectory() && !queueDir.mkdirs()) {
+            Log.w(TAG, "Could not create print queue dir " + queueDir);
+        }
+        // Anything left over belongs to a batch from before a restart that was never printed
+        File[] leftovers = queueDir.listFiles();
+        if (leftovers != null) for (File f : leftovers) f.delete();
+    }
+
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Adds a document to the next print job. Copies the file, so call from a background thread.
+     */
+    public void enqueue(File pdfFile, String title) throws IOException {
+        File copy = new File(queueDir, System.nanoTime() + ".pdf");
+        try (InputStream in = new FileInputStream(pdfFile); OutputStream out = new FileOutputStream(copy)) {
+            byte[] buf = new byte[64 * 1024];
+            int len;
+            while ((len = in.read(buf)) > 0) out.write(buf, 0, len);
+        }
+        synchronized (this) {
+            queue.add(copy);
+            titles.add(title);
+        }
+        KioskLog.d(TAG, "Queued for printing:", title);
+    }
+
+    /**
+     * Opens the print dialog for everything queued plus, if given, the document on screen.
+     * The queue is handed to the job and starts empty again.
+     */
+    public void print(Activity activity, File current, String currentTitle) {
+        List<File> files;
+        List<String> names;
+        synchronized (this) {
+            files = new ArrayList<>(queue);
+            names = new ArrayList<>(titles);
+            queue.clear();
+            titles.clear();
+        }
+        if (current != null) {
+            files.add(current);
+            names.add(currentTitle);
+        }
+        if (files.isEmpty()) return;
+
+        String jobName = "Sanigear - " + (files.size() == 1 ? names.get(0) : files.size() + " documents");
+        PrintManager printManager = (PrintManager) activity.getSystemService(Context.PRINT_SERVICE);
+        try {
+            printManager.print(jobName, new Adapter(files, jobName), null);
+            Metrics.counter("print.jobs").increment();
+            Metrics.counter("print.documents").add(files.size());
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open documents for printing", e);
+            deleteQueued(files);
+        }
+    }
+
+    private void deleteQueued(List<File> files) {
+        for (File f : files) {
+            if (queueDir.equals(f.getParentFile())) f.delete();
+        }
+    }
+
+    private class Adapter extends PrintDocumentAdapter {
+        private final List<File> files;
+        private final String jobName;
+        // Opened up front: an open descriptor keeps the data readable even if the file is evicted
+        private final List<ParcelFileDescriptor> descriptors = new ArrayList<>();
+        private volatile int pageCount = PrintDocumentInfo.PAGE_COUNT_UNKNOWN;
+        private volatile PrintAttributes attributes;
+
+        Adapter(List<File> files, String jobName) throws IOException {
+            this.files = files;
+            this.jobName = jobName;
+            try {
+                for (File f : files) descriptors.add(ParcelFileDescriptor.open(f, ParcelFileDescriptor.MODE_READ_ONLY));
+            } catch (IOException e) {
+                closeDescriptors();
+                throw e;
+            }
+        }
+
+        @Override
+        public void onLayout(PrintAttributes oldAttributes, PrintAttributes newAttributes,
+                             CancellationSignal cancellationSignal, LayoutResultCallback callback, Bundle extras) {
+            if (cancellationSignal.isCanceled()) {
+                callback.onLayoutCancelled();
+                return;
+            }
+            attributes = newAttributes;
+            // A merged batch is drawn to the selected paper size, so it changes with the attributes
+            boolean changed = files.size() > 1 && !newAttributes.equals(oldAttributes);
+            if (pageCount != PrintDocumentInfo.PAGE_COUNT_UNKNOWN) {
+                finishLayout(callback, changed);
+                return;
+            }
+            // Counting opens every document with PdfRenderer, too slow for the main thread
+            Future<?> layout = KioskExecutor.get().submit(KioskExecutor.Lane.INTERACTIVE, null, LAYOUT_TIMEOUT, null, () -> {
+                int count = countPages();
+                if (cancellationSignal.isCanceled()) {
+                    callback.onLayoutCancelled();
+                    return;
+                }
+                pageCount = count;
+                finishLayout(callback, changed);
+            });
+            if (layout.isCancelled()) callback.onLayoutFailed("Too busy, please try again");
+        }
+
+        private void finishLayout(LayoutResultCallback callback, boolean changed) {
+            PrintDocumentInfo info = new PrintDocumentInfo.Builder(jobName + ".pdf")
+                    .setContentType(PrintDocumentInfo.CONTENT_TYPE_DOCUMENT)
+                    .setPageCount(pageCount)
+                    .build();
+            callback.onLayoutFinished(info, changed);
+        }
+
+        @Override
+        public void onWrite(PageRange[] pages, ParcelFileDescriptor destination,
+                            CancellationSignal cancellationSignal, WriteResultCallback callback) {
+            // Copying or drawing pages must not block the main thread the spooler calls us on. No
+            // single-flight key: every call, repeated or from another job, needs its own answer
+            Future<?> write = KioskExecutor.get().submit(KioskExecutor.Lane.INTERACTIVE, null, WRITE_TIMEOUT, null, () -> {
+                long start = SystemClock.elapsedRealtime();
+                try (OutputStream out = new FileOutputStream(destination.getFileDescriptor())) {
+                    if (files.size() == 1) {
+                        copy(descriptors.get(0), out);
+                    } else {
+                        merge(out, cancellationSignal);
+                    }
+                    if (cancellationSignal.isCanceled()) {
+                        callback.onWriteCancelled();
+                        return;
+                    }
+                    // The spooler picks the requested pages out of the whole document
+                    callback.onWriteFinished(new PageRange[]{PageRange.ALL_PAGES});
+                    Metrics.histogram("print.write_ms").record(SystemClock.elapsedRealtime() - start);
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Print write failed", e);
+                    callback.onWriteFailed(e.getMessage());
+                }
+            });
+            if (write.isCancelled()) callback.onWriteFailed("Too busy, please try again");
+        }
+
+        @Override
+        public void onFinish() {
+            closeDescriptors();
+            deleteQueued(files);
+        }
+
+        private int countPages() {
+            int total = 0;
+            for (ParcelFileDescriptor pfd : descriptors) {
+                try (PdfRenderer renderer = new PdfRenderer(pfd.dup())) {
+                    total += renderer.getPageCount();
+                } catch (IOException | SecurityException e) {
+                    Log.w(TAG, "Could not count pages", e);
+                    return PrintDocumentInfo.PAGE_COUNT_UNKNOWN;
+                }
+            }
+            return total;
+        }
+
+        // Streams the original file in the kernel; positional, as the spooler may ask more than once
+        private void copy(ParcelFileDescriptor source, OutputStream out) throws IOException {
+            FileChannel in = new FileInputStream(source.getFileDescriptor()).getChannel();
+            FileChannel target = ((FileOutputStream) out).getChannel();
+            long size = in.size();
+            for (long done = 0; done < size; ) done += in.transferTo(done, size - done, target);
+        }
+
+        // Draws every page of every document into one PDF sized to the selected paper
+        private void merge(OutputStream out, CancellationSignal cancellationSignal) throws IOException {
+            PrintAttributes.MediaSize media = attributes != null && attributes.getMediaSize() != null
+                    ? attributes.getMediaSize() : PrintAttributes.MediaSize.ISO_A4;
+            int pageWidth = media.getWidthMils() * 72 / 1000;   // Points
+            int pageHeight = media.getHeightMils() * 72 / 1000;
+            PdfDocument document = new PdfDocument();
+            Bitmap bitmap = null;
+            try {
+                int pageNumber = 0;
+                for (ParcelFileDescriptor pfd : descriptors) {
+                    try (PdfRenderer renderer = new PdfRenderer(pfd.dup())) {
+                        for (int i = 0; i < renderer.getPageCount(); i++) {
+                            if (cancellationSignal.isCanceled()) return;
+                            try (PdfRenderer.Page source = renderer.openPage(i)) {
+                                // Fit the page to the paper, keeping its aspect ratio
+                                float scale = Math.min(pageWidth / (float) source.getWidth(),
+                                        pageHeight / (float) source.getHeight());
+                                int width = Math.round(source.getWidth() * scale * BATCH_DPI / 72f);
+                                int height = Math.round(source.getHeight() * scale * BATCH_DPI / 72f);
+                                if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+                                    if (bitmap != null) bitmap.recycle();
+                                    bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                                }
+                                bitmap.eraseColor(Color.WHITE);
+                                source.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_PRINT);
+
+                                PdfDocument.Page page = document.startPage(
+                                        new PdfDocument.PageInfo.Builder(pageWidth, pageHeight, pageNumber++).create());
+                                Canvas canvas = page.getCanvas();
+                                Matrix matrix = new Matrix();
+                                matrix.setScale(72f / BATCH_DPI, 72f / BATCH_DPI);
+                                matrix.postTranslate((pageWidth - width * 72f / BATCH_DPI) / 2,
+                                        (pageHeight - height * 72f / BATCH_DPI) / 2);
+                                canvas.drawBitmap(bitmap, matrix, null);
+                                document.finishPage(page);
+                            }
+                        }
+                    }
+                }
+                document.writeTo(out);
+            } finally {
+                document.close();
+                if (bitmap != null) bitmap.recycle();
+            }
+        }
+
+        private void closeDescriptors() {
+            for (ParcelFileDescriptor pfd : descriptors) {
+                try {
+                    pfd.close();
+                } catch (IOException ignored) {
+                    // Nothing left to release
+                }
+            }
+            descriptors.clear();
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.sanigear.kioskapp;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.pdf.PdfRenderer;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.Button;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.ListView;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * In-kiosk PDF viewer built on PdfRenderer.
+ * Shows download progress while the file arrives, renders page 1 first and the remaining pages
+ * lazily as they scroll into view, keeping rendered pages in a bounded bitmap cache.
+ * The header can print the document, or add it to a batch printed together with a later one.
+ */
+public class PdfViewer extends FrameLayout {
+
+    private static final String TAG = "PdfViewer";
+    private static final int MAX_PAGE_WIDTH = 1600;        // Caps bitmap size on large screens
+    private static final int MAX_CACHE_BYTES = 32 * 1024 * 1024;
+    private static final float DEFAULT_ASPECT = 1.414f;    // A4 portrait until the real size is known
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // PdfRenderer allows one open page at a time, so all rendering goes through one thread
+    private final ExecutorService renderExecutor = Executors.newSingleThreadExecutor();
+    private final LruCache<Integer, Bitmap> pageCache;
+    private final int maxPageBytes;
+    // Positions with a view bound to them; written on the main thread, read by the render thread
+    private final Set<Integer> onScreen = ConcurrentHashMap.newKeySet();
+
+    private final TextView status;
+    private final ProgressBar progressBar;
+    private final ListView pageList;
+    private final PageAdapter adapter = new PageAdapter();
+    private final Button print;
+    private final Button addToBatch;
+    private final String title;
+    private final PdfPrinter printer;
+
+    private ParcelFileDescriptor fileDescriptor;
+    private PdfRenderer renderer;
+    private float[] pageAspects = new float[0];
+    private volatile boolean closed = false;
+    private File file;
+
+    public PdfViewer(Activity context, String title, PdfPrinter printer, Runnable onClose) {
+        super(context);
+        setBackgroundColor(Color.DKGRAY);
+        setClickable(true); // Swallow touches so the WebView underneath stays inert
+        this.title = title;
+        this.printer = printer;
+
+        int cacheBytes = (int) Math.min(MAX_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 8);
+        pageCache = new LruCache<Integer, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(Integer key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        // A long page would otherwise not fit the cache at all and be re-rendered on every bind
+        maxPageBytes = cacheBytes / 2;
+
+        LinearLayout header = new LinearLayout(context);
+        header.setOrientation(LinearLayout.HORIZONTAL);
+        header.setGravity(Gravity.CENTER_VERTICAL);
+        header.setBackgroundColor(Color.WHITE);
+        header.setPadding(20, 10, 20, 10);
+
+        status = new TextView(context);
+        status.setText(title);
+        status.setTextColor(Color.BLACK);
+        status.setTextSize(16);
+        header.addView(status, new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT, 1));
+
+        // Enabled once the file is open
+        addToBatch = new Button(context);
+        addToBatch.setText("Add to batch");
+        addToBatch.setEnabled(false);
+        addToBatch.setOnClickListener(v -> enqueueForPrinting());
+        header.addView(addToBatch);
+
+        print = new Button(context);
+        print.setText("Print");
+        print.setEnabled(false);
+        print.setOnClickListener(v -> {
+            printer.print(context, getFile(), title);
+            showPageCount();
+        });
+        header.addView(print);
+
+        Button close = new Button(context);
+        close.setText("Close");
+        close.setOnClickListener(v -> onClose.run());
+        header.addView(close);
+
+        progressBar = new ProgressBar(context, null, android.R.attr.progressBarStyleHorizontal);
+        progressBar.setIndeterminate(true);
+
+        pageList = new ListView(context);
+        pageList.setDividerHeight(16);
+        pageList.setAdapter(adapter);
+
+        LinearLayout content = new LinearLayout(context);
+        content.setOrientation(LinearLayout.VERTICAL);
+        content.addView(header);
+        content.addView(progressBar);
+        content.addView(pageList, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 0, 1));
+        addView(content, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+    }
+
+    /**
+     * Updates the progress bar while the file downloads. Safe to call from any thread.
+     */
+    public void onDownloadProgress(long bytesRead, long totalBytes) {
+        mainHandler.post(() -> {
+            if (closed) return;
+            if (totalBytes > 0) {
+                progressBar.setIndeterminate(false);
+                progressBar.setMax(1000);
+                progressBar.setProgress((int) (bytesRead * 1000 / totalBytes));
+            }
+            status.setText("Loading… " + bytesRead / 1024 + " KB");
+        });
+    }
+
+    /**
+     * Opens the downloaded file and renders page 1. Call from a background thread.
+     *
+     * @throws IOException if the file can't be opened by PdfRenderer (e.g. password protected)
+     */
+    public void open(File pdfFile) throws IOException {
+        ParcelFileDescriptor pfd = ParcelFileDescriptor.open(pdfFile, ParcelFileDescriptor.MODE_READ_ONLY);
+        PdfRenderer pdfRenderer;
+        try {
+            pdfRenderer = new PdfRenderer(pfd);
+        } catch (IOException | SecurityException e) {
+            pfd.close();
+            throw new IOException("PdfRenderer can't open " + pdfFile.getName(), e);
+        }
+
+        float[] aspects = new float[pdfRenderer.getPageCount()];
+        try {
+            renderExecutor.execute(() -> {
+                synchronized (this) {
+                    if (closed) {
+                        closeQuietly(pdfRenderer, pfd);
+                        return;
+                    }
+                    file = pdfFile;
+                    fileDescriptor = pfd;
+                    renderer = pdfRenderer;
+                    pageAspects = aspects;
+                }
+                mainHandler.post(() -> {
+                    if (closed) return;
+                    progressBar.setVisibility(View.GONE);
+                    print.setEnabled(true);
+                    addToBatch.setEnabled(true);
+                    showPageCount();
+                    adapter.notifyDataSetChanged();
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            // Viewer was closed while the download finished
+            closeQuietly(pdfRenderer, pfd);
+        }
+    }
+
+    private void showPageCount() {
+        int queued = printer.getQueuedCount();
+        status.setText(title + " — " + pageAspects.length + " page(s)"
+                + (queued > 0 ? ", " + queued + " more queued for printing" : ""));
+    }
+
+    // Copies the file into the print queue off the main thread
+    private void enqueueForPrinting() {
+        File pdfFile = getFile();
+        if (pdfFile == null) return;
+        addToBatch.setEnabled(false); // One copy per document
+        // No single-flight key: adding another document meanwhile must not be dropped
+        Future<?> enqueue = KioskExecutor.get().submit(KioskExecutor.Lane.INTERACTIVE, null, 30000, null, () -> {
+            try {
+                printer.enqueue(pdfFile, title);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not queue for printing", e);
+                mainHandler.post(() -> addToBatch.setEnabled(!closed));
+                return;
+            }
+            mainHandler.post(() -> {
+                if (!closed) showPageCount();
+            });
+        });
+        if (enqueue.isCancelled()) addToBatch.setEnabled(true); // Lane full, nothing was queued
+    }
+
+    /**
+     * The file currently displayed, or null before open() completes.
+     */
+    public synchronized File getFile() {
+        return file;
+    }
+
+    /**
+     * Releases the renderer, the render thread and all cached bitmaps.
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        renderExecutor.execute(() -> {
+            synchronized (this) {
+                closeQuietly(renderer, fileDescriptor);
+                renderer = null;
+                fileDescriptor = null;
+            }
+        });
+        renderExecutor.shutdown();
+        pageCache.evictAll();
+    }
+
+    private static void closeQuietly(PdfRenderer pdfRenderer, ParcelFileDescriptor pfd) {
+        try {
+            if (pdfRenderer != null) pdfRenderer.close();
+            if (pfd != null) pfd.close();
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to close renderer", e);
+        }
+    }
+
+    // Runs on the render thread
+    private Bitmap renderPage(int index, int width) {
+        synchronized (this) {
+            if (renderer == null || closed) return null;
+            try (PdfRenderer.Page page = renderer.openPage(index)) {
+                pageAspects[index] = page.getHeight() / (float) page.getWidth();
+                int height = Math.round(width * pageAspects[index]);
+                long bytes = 4L * width * height;
+                if (bytes > maxPageBytes) {
+                    // Scale down to the budget; the ImageView stretches it back to full width
+                    double scale = Math.sqrt(maxPageBytes / (double) bytes);
+                    width = Math.max(1, (int) (width * scale));
+                    height = Math.max(1, (int) (height * scale));
+                }
+                Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                bitmap.eraseColor(Color.WHITE); // PdfRenderer leaves the background transparent
+                page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+                return bitmap;
+            }
+        }
+    }
+
+    private void requestPage(int index, ImageView target) {
+        if (closed) return;
+        int width = Math.min(MAX_PAGE_WIDTH, Math.max(pageList.getWidth(), 1));
+        Integer expected = index;
+        renderExecutor.execute(() -> {
+            // Skip pages that scrolled away before their turn came
+            if (!onScreen.contains(expected)) return;
+            Bitmap bitmap = renderPage(index, width);
+            if (bitmap == null) return;
+            pageCache.put(index, bitmap);
+            mainHandler.post(() -> {
+                // Bound directly: the cache may already have evicted it for a neighbouring page
+                if (!closed && expected.equals(target.getTag())) bindPage(target, index, bitmap);
+            });
+        });
+    }
+
+    private void bindPage(ImageView view, int index) {
+        bindPage(view, index, pageCache.get(index));
+    }
+
+    private void bindPage(ImageView view, int index, Bitmap bitmap) {
+        int width = pageList.getWidth();
+        float aspect = pageAspects[index] > 0 ? pageAspects[index] : DEFAULT_ASPECT;
+        view.setLayoutParams(new AbsListView.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, Math.round(width * aspect)));
+        view.setImageBitmap(bitmap);
+        if (bitmap == null) requestPage(index, view);
+    }
+
+    private class PageAdapter extends BaseAdapter {
+        @Override
+        public int getCount() {
+            return pageAspects.length;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return position;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            ImageView page = convertView instanceof ImageView ? (ImageView) convertView : new ImageView(getContext());
+            page.setBackgroundColor(Color.WHITE);
+            page.setScaleType(ImageView.ScaleType.FIT_CENTER);
+            if (page.getTag() instanceof Integer) onScreen.remove(page.getTag());
+            page.setTag(position);
+            onScreen.add(position);
+            bindPage(page, position);
+            return page;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.sanigear.kioskapp;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.net.nsd.NsdManager;
+import android.net.nsd.NsdServiceInfo;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.sanigear.kioskapp.core.Hashes;
+import com.sanigear.kioskapp.core.PeerApkClient;
+import com.sanigear.kioskapp.core.PeerApkServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional peer distribution of updates ({@link KioskStore#PEER_UPDATES}, off by default).
+ * A kiosk serves the APK it is running, or one it has just downloaded and verified, from a
+ * {@link PeerApkServer} and advertises it over NSD (mDNS) with its version and SHA-256 in the
+ * TXT record. Before going to GitHub, the updater looks for a peer advertising the digest it
+ * expects and fetches from it; the digest is checked again on arrival, and any failure falls
+ * back to the internet.
+ */
+public final class PeerUpdates {
+
+    private static final String TAG = "PeerUpdates";
+    static final String SERVICE_TYPE = "_sanigearapk._tcp.";
+    private static final String SERVICE_NAME = "SanigearKiosk";
+    private static final long DISCOVERY_TIMEOUT = 4000;
+    private static final long RESOLVE_TIMEOUT = 2000;
+    private static final int FETCH_TIMEOUT = 15000;
+
+    private static PeerUpdates instance;
+
+    private final Context context;
+    private final NsdManager nsd;
+    private PeerApkServer server;
+    private NsdManager.RegistrationListener registration;
+    // Before API 34 a timed-out resolve can't be stopped and keeps NsdManager busy until it calls back
+    private volatile CountDownLatch pendingResolve;
+
+    private PeerUpdates(Context context) {
+        this.context = context.getApplicationContext();
+        this.nsd = (NsdManager) this.context.getSystemService(Context.NSD_SERVICE);
+    }
+
+    public static synchronized PeerUpdates get(Context context) {
+        if (instance == null) instance = new PeerUpdates(context);
+        return instance;
+    }
+
+    public static boolean isEnabled(Context context) {
+        return KioskStore.get(context).get(KioskStore.PEER_UPDATES);
+    }
+
+    /**
+     * Serves the installed APK. Hashing it takes a moment, so call this off the main thread;
+     * the digest is cached until the app is updated again.
+     */
+    public void serveInstalledApk() {
+        if (!isEnabled(context)) return;
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            File apk = new File(context.getApplicationInfo().sourceDir);
+            KioskStore store = KioskStore.get(context);
+            String sha256 = store.get(KioskStore.INSTALLED_APK_SHA256);
+            if (sha256 == null || store.get(KioskStore.INSTALLED_APK_STAMP) != info.lastUpdateTime) {
+                sha256 = Hashes.sha256Hex(apk);
+                store.put(KioskStore.INSTALLED_APK_SHA256, sha256);
+                store.put(KioskStore.INSTALLED_APK_STAMP, info.lastUpdateTime);
+            }
+            offer(info.versionName, sha256, apk);
+        } catch (PackageManager.NameNotFoundException | IOException e) {
+            Log.w(TAG, "Could not serve the installed APK", e);
+        }
+    }
+
+    /**
+     * Starts serving a verified APK to peers, replacing whatever was served before.
+     */
+    public synchronized void offer(String version, String sha256, File apk) {
+        if (!isEnabled(context)) return;
+        if (server != null && server.getSha256().equalsIgnoreCase(sha256)) return;
+        stop();
+
+        PeerApkServer newServer = new PeerApkServer(apk, sha256);
+        int port;
+        try {
+            port = newServer.start(null, 0);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not start the peer endpoint", e);
+            return;
+        }
+        server = newServer;
+
+        NsdServiceInfo info = new NsdServiceInfo();
+        info.setServiceName(SERVICE_NAME);
+        info.setServiceType(SERVICE_TYPE);
+        info.setPort(port);
+        info.setAttribute("version", version);
+        info.setAttribute("sha256", sha256.toLowerCase(Locale.US));
+        registration = new NsdManager.RegistrationListener() {
+            @Override
+            public void onServiceRegistered(NsdServiceInfo registered) {
+                Log.d(TAG, "Serving " + version + " as " + registered.getServiceName() + " on port " + port);
+            }
+
+            @Override
+            public void onRegistrationFailed(NsdServiceInfo failed, int errorCode) {
+                Log.w(TAG, "NSD registration failed: " + errorCode);
+            }
+
+            @Override
+            public void onServiceUnregistered(NsdServiceInfo unregistered) {}
+
+            @Override
+            public void onUnregistrationFailed(NsdServiceInfo failed, int errorCode) {}
+        };
+        nsd.registerService(info, NsdManager.PROTOCOL_DNS_SD, registration);
+    }
+
+    public synchronized void stop() {
+        if (registration != null) {
+            try {
+                nsd.unregisterService(registration);
+            } catch (IllegalArgumentException ignored) {
+                // Registration had already failed
+            }
+            registration = null;
+        }
+        if (server != null) {
+            Metrics.counter("peer.served").add(server.getServedCount());
+            server.close();
+            server = null;
+        }
+    }
+
+    /**
+     * Looks for a peer advertising this digest and downloads the APK from it. Blocks for up to a
+     * few seconds of discovery plus the transfer, so only call it from the update task.
+     *
+     * @return the verified APK, or null if no peer had it and the caller should use the internet
+     */
+    @Nullable
+    public File fetch(String sha256, File dir) {
+        if (!isEnabled(context)) return null;
+        synchronized (this) {
+            // Downloaded already and still being offered, e.g. after the install was cancelled
+            if (server != null && server.getSha256().equalsIgnoreCase(sha256)) return server.getApk();
+        }
+
+        BlockingQueue<NsdServiceInfo> found = new LinkedBlockingQueue<>();
+        NsdManager.DiscoveryListener discovery = new NsdManager.DiscoveryListener() {
+            @Override
+            public void onServiceFound(NsdServiceInfo service) {
+                found.add(service);
+            }
+
+            @Override
+            public void onStartDiscoveryFailed(String serviceType, int errorCode) {
+                Log.w(TAG, "NSD discovery failed: " + errorCode);
+            }
+
+            @Override
+            public void onDiscoveryStarted(String serviceType) {}
+
+            @Override
+            public void onDiscoveryStopped(String serviceType) {}
+
+            @Override
+            public void onServiceLost(NsdServiceInfo service) {}
+
+            @Override
+            public void onStopDiscoveryFailed(String serviceType, int errorCode) {}
+        };
+
+        File out = new File(dir, "peer-" + sha256.substring(0, Math.min(16, sha256.length())) + ".apk");
+        long deadline = SystemClock.elapsedRealtime() + DISCOVERY_TIMEOUT;
+        nsd.discoverServices(SERVICE_TYPE, NsdManager.PROTOCOL_DNS_SD, discovery);
+        try {
+            long remaining;
+            while ((remaining = deadline - SystemClock.elapsedRealtime()) > 0) {
+                NsdServiceInfo candidate = found.poll(remaining, TimeUnit.MILLISECONDS);
+                if (candidate == null) break;
+                NsdServiceInfo peer = resolve(candidate, deadline);
+                if (peer == null || peer.getHost() == null || !sha256.equalsIgnoreCase(attribute(peer, "sha256"))) {
+                    continue;
+                }
+                String host = peer.getHost().getHostAddress();
+                try {
+                    long start = SystemClock.elapsedRealtime();
+                    PeerApkClient.fetch(host, peer.getPort(), sha256, out, FETCH_TIMEOUT);
+                    Metrics.counter("peer.fetched").increment();
+                    Log.d(TAG, "Fetched " + out.length() + " bytes from " + host + " in "
+                            + (SystemClock.elapsedRealtime() - start) + " ms");
+                    return out;
+                } catch (IOException e) {
+                    Log.w(TAG, "Peer " + host + " failed, trying the next one", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                nsd.stopServiceDiscovery(discovery);
+            } catch (IllegalArgumentException ignored) {
+                // Discovery never started
+            }
+        }
+        Metrics.counter("peer.missed").increment();
+        Log.d(TAG, "No peer has " + sha256 + ", using the internet");
+        return null;
+    }
+
+    // NsdManager resolves one service at a time, so this waits for each result. A resolve that
+    // times out is stopped on API 34+; before that the next one waits for it to report back, as
+    // starting another would only fail with FAILURE_ALREADY_ACTIVE
+    @Nullable
+    private NsdServiceInfo resolve(NsdServiceInfo service, long deadline) throws InterruptedException {
+        CountDownLatch pending = pendingResolve;
+        if (pending != null) {
+            if (!pending.await(Math.max(0, deadline - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS)) return null;
+            pendingResolve = null;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        NsdServiceInfo[] result = new NsdServiceInfo[1];
+        NsdManager.ResolveListener listener = new NsdManager.ResolveListener() {
+            @Override
+            public void onServiceResolved(NsdServiceInfo resolved) {
+                result[0] = resolved;
+                done.countDown();
+            }
+
+            @Override
+            public void onResolveFailed(NsdServiceInfo failed, int errorCode) {
+                done.countDown();
+            }
+
+            @Override
+            public void onResolutionStopped(NsdServiceInfo stopped) {
+                done.countDown();
+            }
+        };
+        nsd.resolveService(service, listener);
+        if (done.await(RESOLVE_TIMEOUT, TimeUnit.MILLISECONDS)) return result[0];
+
+        Metrics.counter("peer.resolve_timeouts").increment();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+            try {
+                nsd.stopServiceResolution(listener);
+            } catch (IllegalArgumentException ignored) {
+                // Finished in the meantime
+            }
+        } else {
+            pendingResolve = done;
+        }
+        return null;
+    }
+
+    @Nullable
+    private static String attribute(NsdServiceInfo info, String key) {
+        Map<String, byte[]> attributes = info.getAttributes();
+        byte[] value = attributes != null ? attributes.get(key) : null;
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+}
@@ -0,0 +1,207 @@
+package com.sanigear.kioskapp;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.Message;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.WebChromeClient;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import android.widget.FrameLayout;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Windows the portal opens with window.open, shown over the kiosk WebView.
+ * At most {@link #MAX_LIVE} popups are alive; opening another one closes the oldest. A popup is
+ * destroyed when the page calls window.close(), on Back, or when its renderer dies, so nothing
+ * accumulates over weeks of uptime.
+ * <p>
+ * WebView only accepts a never-navigated instance for a new window, so a closed popup can't be
+ * reused. Instead up to {@link #SPARES} configured, unused WebViews are kept ready and refilled
+ * when the main thread is idle, taking the construction cost off the tap that opens a popup.
+ */
+public class PopupWebViewPool {
+
+    private static final String TAG = "PopupWebViewPool";
+    static final int MAX_LIVE = 2;
+    static final int SPARES = 1;
+    // Rough per-instance cost: a spare has no page; a live popup shares the renderer process
+    private static final long SPARE_ESTIMATE_KB = 2 * 1024;
+    private static final long LIVE_ESTIMATE_KB = 25 * 1024;
+
+    /**
+     * Receives PDF links tapped inside a popup.
+     */
+    public interface PdfHandler {
+        void openPdf(String url);
+    }
+
+    private final Context context;
+    private final ViewGroup container;
+    private final PdfHandler pdfHandler;
+    private final ArrayDeque<WebView> spares = new ArrayDeque<>();
+    private final List<WebView> live = new ArrayList<>(); // Oldest first, main thread only
+    private boolean refillQueued = false;
+    private boolean released = false;
+
+    public PopupWebViewPool(Context context, ViewGroup container, PdfHandler pdfHandler) {
+        this.context = context;
+        this.container = container;
+        this.pdfHandler = pdfHandler;
+    }
+
+    /**
+     * Creates the spare WebViews once the main thread has nothing else to do.
+     */
+    public void prewarm() {
+        scheduleRefill();
+    }
+
+    /**
+     * Handles WebChromeClient.onCreateWindow for the kiosk WebView.
+     */
+    public boolean onCreateWindow(Message resultMsg) {
+        if (released) return false;
+        if (live.size() >= MAX_LIVE) {
+            Log.d(TAG, "Popup limit reached, closing the oldest");
+            Metrics.counter("popup.evicted").increment();
+            close(live.get(0));
+        }
+        WebView popup = spares.poll();
+        if (popup == null) popup = create();
+        live.add(popup);
+        container.addView(popup, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.MATCH_PARENT,
+                FrameLayout.LayoutParams.MATCH_PARENT));
+        WebView.WebViewTransport transport = (WebView.WebViewTransport) resultMsg.obj;
+        transport.setWebView(popup);
+        resultMsg.sendToTarget();
+        Metrics.counter("popup.opened").increment();
+        report();
+        scheduleRefill();
+        return true;
+    }
+
+    public boolean hasPopups() {
+        return !live.isEmpty();
+    }
+
+    /**
+     * Closes the topmost popup, e.g. for the Back key.
+     */
+    public void closeTop() {
+        if (!live.isEmpty()) close(live.get(live.size() - 1));
+    }
+
+    /**
+     * Closes every open popup, e.g. before the container is cleared for another view; spares stay.
+     */
+    public void closeAll() {
+        while (!live.isEmpty()) close(live.get(live.size() - 1));
+    }
+
+    /**
+     * Destroys the spares to give memory back; live popups stay. Refilled on the next popup.
+     */
+    public void trim() {
+        while (!spares.isEmpty()) spares.poll().destroy();
+        report();
+    }
+
+    /**
+     * Destroys every popup and spare; the pool can't be used afterwards.
+     */
+    public void release() {
+        released = true;
+        closeAll();
+        trim();
+    }
+
+    public String getStatusSummary() {
+        return "Popups " + live.size() + "/" + MAX_LIVE + " | spares " + spares.size()
+                + " | ~" + estimatedMemoryKb() / 1024 + " MB";
+    }
+
+    private void close(WebView popup) {
+        if (!live.remove(popup)) return; // Already closed, e.g. window.close() after Back
+        container.removeView(popup);
+        popup.stopLoading();
+        popup.setWebChromeClient(null);
+        popup.destroy();
+        Metrics.counter("popup.closed").increment();
+        report();
+    }
+
+    private WebView create() {
+        WebView popup = new WebView(context);
+        popup.getSettings().setJavaScriptEnabled(true);
+        popup.getSettings().setDomStorageEnabled(true);
+        popup.setWebViewClient(new PopupClient());
+        popup.setWebChromeClient(new WebChromeClient() {
+            @Override
+            public void onCloseWindow(WebView window) {
+                close(window);
+            }
+        });
+        return popup;
+    }
+
+    // Queued behind whatever the main thread is doing, so a popup opening isn't delayed by it
+    private void scheduleRefill() {
+        if (refillQueued || released || spares.size() >= SPARES) return;
+        refillQueued = true;
+        Looper.myQueue().addIdleHandler(() -> {
+            refillQueued = false;
+            if (!released && spares.size() < SPARES) {
+                spares.add(create());
+                report();
+            }
+            return false;
+        });
+    }
+
+    private long estimatedMemoryKb() {
+        return spares.size() * SPARE_ESTIMATE_KB + live.size() * LIVE_ESTIMATE_KB;
+    }
+
+    private void report() {
+        Metrics.gauge("popup.live").set(live.size());
+        Metrics.gauge("popup.spares").set(spares.size());
+        Metrics.gauge("popup.memory_kb").set(estimatedMemoryKb());
+    }
+
+    private class PopupClient extends WebViewClient {
+        @Override
+        public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+            String url = request.getUrl().toString();
+            if (SecureWebViewClient.URL_POLICY.isPdf(url)) {
+                // A popup opened just for the PDF would otherwise sit blank over the viewer;
+                // posted, as the view can't be destroyed from inside its own callback
+                if (!view.canGoBack()) view.post(() -> close(view));
+                pdfHandler.openPdf(url);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+            // Unhandled, this would take the whole kiosk process down with the renderer
+            Log.w(TAG, "Popup renderer gone (crashed: " + detail.didCrash() + ")");
+            Metrics.counter("popup.renderer_gone").increment();
+            if (spares.remove(view)) {
+                view.destroy();
+                report();
+            } else {
+                close(view);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.sanigear.kioskapp;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import com.sanigear.kioskapp.core.AssetCachePolicy;
+import com.sanigear.kioskapp.core.PdfCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Offline-first disk cache for the portal's immutable static assets (JS, CSS, fonts, images), used
+ * from shouldInterceptRequest. Only responses {@link AssetCachePolicy} accepts are kept: marked
+ * immutable, with a long max-age, or with a fingerprinted URL. They are always served from disk;
+ * once stale they are revalidated in the background with a conditional request for next time.
+ * The login page itself is kept as an offline shell that is only served when there is no network.
+ */
+public class PortalAssetCache {
+
+    private static final String TAG = "PortalAssetCache";
+    // Bump when the on-disk layout changes; older folders are deleted on startup
+    private static final int CACHE_VERSION = 2; // 2: only immutable or fingerprinted assets
+    private static final String DIR_PREFIX = "portal_assets_v";
+    private static final long MAX_BYTES = 30L * 1024 * 1024;
+
+    private static final Set<String> STATIC_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "js", "css", "woff", "woff2", "ttf", "otf", "eot",
+            "png", "jpg", "jpeg", "gif", "svg", "ico", "webp"
+    ));
+
+    private final File dir;
+    private final String shellPath;
+    private final ConnectivityManager connectivityManager;
+    private final ExecutorService revalidator = Executors.newSingleThreadExecutor();
+    private final Map<String, Boolean> inFlight = new ConcurrentHashMap<>();
+    // Assets the policy turned down; left to the WebView so they aren't fetched twice
+    private final Set<String> uncacheable = ConcurrentHashMap.newKeySet();
+
+    public PortalAssetCache(Context context, String shellPath) {
+        this.shellPath = shellPath;
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.dir = new File(context.getCacheDir(), DIR_PREFIX + CACHE_VERSION);
+        revalidator.execute(() -> deleteOldVersions(context.getCacheDir()));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(TAG, "Could not create cache dir " + dir);
+        }
+    }
+
+    /**
+     * Called from shouldInterceptRequest on a WebView background thread.
+     * Returns null to let the WebView load the request itself.
+     */
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) return null;
+        Uri uri = request.getUrl();
+        if (!SecureWebViewClient.URL_POLICY.isAllowedHost(uri.getHost())) return null;
+
+        String url = uri.toString();
+        if (request.isForMainFrame()) {
+            // Pages go to the network as usual; the shell is only a fallback when offline
+            return shellPath.equals(uri.getPath()) && !isNetworkAvailable() ? serve(url) : null;
+        }
+        if (!isStaticAsset(uri) || uncacheable.contains(url)) return null;
+
+        File body = bodyFile(url);
+        Properties meta = body.isFile() ? readMeta(metaFile(url)) : null;
+        if (meta != null) {
+            // Stale-while-revalidate: the page never waits on the network for an asset on disk
+            if (!isFresh(meta) && isNetworkAvailable()) revalidateAsync(url, false);
+            return serve(url);
+        }
+        if (!isNetworkAvailable()) return null;
+        try {
+            WebResourceResponse refused = fetch(url, false);
+            if (refused != null) return refused;
+        } catch (IOException e) {
+            Log.w(TAG, "Asset fetch failed: " + url, e);
+        }
+        return serve(url); // Null leaves the request to the WebView
+    }
+
+    /**
+     * Keeps a copy of the login page after it loaded, so it can render without network later.
+     */
+    public void onPageFinished(String url) {
+        Uri uri = Uri.parse(url);
+        if (SecureWebViewClient.URL_POLICY.isAllowedHost(uri.getHost()) && shellPath.equals(uri.getPath())) {
+            revalidateAsync(url, true);
+        }
+    }
+
+    /**
+     * True if a login shell is stored and the kiosk can show something while offline.
+     */
+    public boolean hasShell(String shellUrl) {
+        return bodyFile(shellUrl).isFile();
+    }
+
+    private void revalidateAsync(String url, boolean shell) {
+        if (inFlight.putIfAbsent(url, Boolean.TRUE) != null) return;
+        revalidator.execute(() -> {
+            try {
+                fetch(url, shell);
+            } catch (IOException e) {
+                Log.w(TAG, "Revalidation failed: " + url, e);
+            } finally {
+                inFlight.remove(url);
+            }
+        });
+    }
+
+    private static boolean isFresh(Properties meta) {
+        long fetchedAt = Long.parseLong(meta.getProperty("fetchedAt", "0"));
+        long freshFor = Long.parseLong(meta.getProperty("freshFor", "0"));
+        return System.currentTimeMillis() - fetchedAt < freshFor;
+    }
+
+    // Conditional GET; a 304 only refreshes the timestamp. The login shell is kept regardless of
+    // its caching headers since it is only ever served offline. On a miss the policy refuses,
+    // returns the body already read, so the WebView doesn't request it a second time.
+    private WebResourceResponse fetch(String url, boolean shell) throws IOException {
+        File body = bodyFile(url);
+        File metaFile = metaFile(url);
+        Properties meta = body.isFile() ? readMeta(metaFile) : null;
+
+        HttpURLConnection conn = HttpTransport.get().open(url);
+        // A redirect, e.g. to the login page when signed out, must not be stored under this URL
+        conn.setInstanceFollowRedirects(false);
+        try {
+            if (meta != null) {
+                if (meta.getProperty("etag") != null)
+                    conn.setRequestProperty("If-None-Match", meta.getProperty("etag"));
+                if (meta.getProperty("lastModified") != null)
+                    conn.setRequestProperty("If-Modified-Since", meta.getProperty("lastModified"));
+            }
+
+            Uri uri = Uri.parse(url);
+            int code = conn.getResponseCode();
+            AssetCachePolicy policy = AssetCachePolicy.of(conn.getHeaderField("Cache-Control"),
+                    uri.getPath(), uri.getQuery());
+            boolean headersChanged = conn.getHeaderField("Cache-Control") != null;
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && meta != null) {
+                // A 304 may carry updated caching headers; without them the stored ones stand
+                if (headersChanged && !shell && !policy.isCacheable()) {
+                    uncacheable.add(url);
+                    delete(body, metaFile);
+                    return null;
+                }
+                if (headersChanged) meta.setProperty("freshFor", String.valueOf(shell ? 0 : policy.freshForMillis()));
+                meta.setProperty("fetchedAt", String.valueOf(System.currentTimeMillis()));
+                writeMeta(metaFile, meta);
+                return null;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                if (!shell) delete(body, metaFile); // A portal hiccup shouldn't cost the offline shell
+                throw new IOException("HTTP " + code);
+            }
+            if (!shell && !policy.isCacheable()) {
+                uncacheable.add(url);
+                delete(body, metaFile);
+                return meta == null ? inline(conn) : null; // A revalidation has nobody to hand it to
+            }
+
+            // Per-thread temp name: a miss and a revalidation can race on the same URL
+            File temp = new File(body.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+            try (InputStream in = conn.getInputStream(); OutputStream out = new FileOutputStream(temp)) {
+                byte[] buf = new byte[16 * 1024];
+                int len;
+                while ((len = in.read(buf)) > 0) out.write(buf, 0, len);
+            }
+            if (!temp.renameTo(body)) {
+                temp.delete();
+                throw new IOException("Could not store " + url);
+            }
+
+            Properties newMeta = new Properties();
+            String[] type = contentType(conn);
+            newMeta.setProperty("mimeType", type[0]);
+            if (type[1] != null) newMeta.setProperty("encoding", type[1]);
+            if (conn.getHeaderField("ETag") != null) newMeta.setProperty("etag", conn.getHeaderField("ETag"));
+            if (conn.getHeaderField("Last-Modified") != null)
+                newMeta.setProperty("lastModified", conn.getHeaderField("Last-Modified"));
+            newMeta.setProperty("fetchedAt", String.valueOf(System.currentTimeMillis()));
+            newMeta.setProperty("freshFor", String.valueOf(shell ? 0 : policy.freshForMillis()));
+            writeMeta(metaFile, newMeta);
+        } finally {
+            HttpTransport.get().release(conn);
+        }
+        evict();
+        return null;
+    }
+
+    // Reads the whole response, as the connection is released before the WebView would read it
+    private static WebResourceResponse inline(HttpURLConnection conn) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try (InputStream in = conn.getInputStream()) {
+            byte[] buf = new byte[16 * 1024];
+            int len;
+            while ((len = in.read(buf)) > 0) data.write(buf, 0, len);
+        }
+        String[] type = contentType(conn);
+        return new WebResourceResponse(type[0], type[1] != null ? type[1] : "UTF-8",
+                new ByteArrayInputStream(data.toByteArray()));
+    }
+
+    // Mime type and charset (null if none) from the Content-Type header
+    private static String[] contentType(HttpURLConnection conn) {
+        String contentType = conn.getContentType() != null ? conn.getContentType() : "application/octet-stream";
+        String[] typeParts = contentType.split(";");
+        String[] result = {typeParts[0].trim(), null};
+        for (String part : typeParts) {
+            String p = part.trim();
+            if (p.toLowerCase(Locale.US).startsWith("charset=")) result[1] = p.substring("charset=".length());
+        }
+        return result;
+    }
+
+    private WebResourceResponse serve(String url) {
+        File body = bodyFile(url);
+        Properties meta = body.isFile() ? readMeta(metaFile(url)) : null;
+        if (meta == null) return null;
+        try {
+            body.setLastModified(System.currentTimeMillis()); // LRU access time
+            return new WebResourceResponse(meta.getProperty("mimeType"),
+                    meta.getProperty("encoding", "UTF-8"), new FileInputStream(body));
+        } catch (IOException e) {
+            Log.w(TAG, "Cached asset unreadable: " + url, e);
+            return null;
+        }
+    }
+
+    private static void delete(File body, File metaFile) {
+        body.delete();
+        metaFile.delete();
+    }
+
+    private synchronized void evict() {
+        File[] bodies = dir.listFiles((d, name) -> name.endsWith(".body"));
+        if (bodies == null) return;
+        long total = 0;
+        for (File f : bodies) total += f.length();
+        if (total <= MAX_BYTES) return;
+
+        Arrays.sort(bodies, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : bodies) {
+            if (total <= MAX_BYTES) break;
+            long length = f.length();
+            String key = f.getName().substring(0, f.getName().length() - ".body".length());
+            if (f.delete()) {
+                new File(dir, key + ".meta").delete();
+                total -= length;
+            }
+        }
+    }
+
+    private boolean isStaticAsset(Uri uri) {
+        String path = uri.getPath();
+        if (path == null) return false;
+        int dot = path.lastIndexOf('.');
+        return dot >= 0 && STATIC_EXTENSIONS.contains(path.substring(dot + 1).toLowerCase(Locale.US));
+    }
+
+    private boolean isNetworkAvailable() {
+        if (connectivityManager == null) return false;
+        NetworkCapabilities caps = connectivityManager.getNetworkCapabilities(connectivityManager.getActiveNetwork());
+        return caps != null && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+
+    private File bodyFile(String url) {
+        return new File(dir, PdfCache.keyFor(url, null) + ".body");
+    }
+
+    private File metaFile(String url) {
+        return new File(dir, PdfCache.keyFor(url, null) + ".meta");
+    }
+
+    private static Properties readMeta(File metaFile) {
+        if (!metaFile.isFile()) return null;
+        Properties meta = new Properties();
+        try (InputStream in = new FileInputStream(metaFile)) {
+            meta.load(in);
+            return meta.getProperty("mimeType") != null ? meta : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeMeta(File metaFile, Properties meta) throws IOException {
+        try (OutputStream out = new FileOutputStream(metaFile)) {
+            meta.store(out, null);
+        }
+    }
+
+    private static void deleteOldVersions(File cacheRoot) {
+        File[] dirs = cacheRoot.listFiles((d, name) -> name.startsWith(DIR_PREFIX)
+                && !name.equals(DIR_PREFIX + CACHE_VERSION));
+        if (dirs == null) return;
+        for (File old : dirs) {
+            File[] files = old.listFiles();
+            if (files != null) for (File f : files) f.delete();
+            old.delete();
+        }
+    }
+}
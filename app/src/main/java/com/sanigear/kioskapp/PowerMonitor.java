@@ -0,0 +1,155 @@
+package com.sanigear.kioskapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.util.Log;
+
+/**
+ * Battery state pushed from the ACTION_BATTERY_CHANGED broadcast instead of polled.
+ * Listeners only hear about a change when the level, charging state or whole-degree temperature
+ * actually moved. Below a configurable level on battery (or with system battery saver on) the
+ * kiosk switches to a low-power profile, and leaves it again a few percent higher so it doesn't
+ * toggle on every reading.
+ */
+public class PowerMonitor {
+
+    private static final String TAG = "PowerMonitor";
+
+    // Read from WatchdogScheduler's thread to stretch its polling interval
+    private static volatile boolean lowPower = false;
+
+    public interface Listener {
+        /**
+         * Called on the main thread when the level, charging state or temperature changed.
+         */
+        void onBatteryChanged(int level, boolean charging, int temperatureC);
+
+        void onLowPowerChanged(boolean lowPower);
+    }
+
+    private final Context context;
+    private final BatteryManager batteryManager;
+    private final PowerManager powerManager;
+    private final Listener listener;
+    private final int lowPowerLevel;
+    private final int hysteresis;
+
+    private int level = -1;
+    private boolean charging = false;
+    private int temperature = Integer.MIN_VALUE;
+    private boolean registered = false;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                onBatteryIntent(intent);
+            } else {
+                updateLowPower();
+            }
+        }
+    };
+
+    public PowerMonitor(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        this.listener = listener;
+        KioskStore store = KioskStore.get(context);
+        this.lowPowerLevel = store.get(KioskStore.LOW_POWER_LEVEL);
+        this.hysteresis = store.get(KioskStore.LOW_POWER_HYSTERESIS);
+    }
+
+    /**
+     * True while the low-power profile is active, for code without a monitor instance.
+     */
+    public static boolean isLowPower() {
+        return lowPower;
+    }
+
+    /**
+     * Registers for battery broadcasts; the sticky intent delivers the current state right away.
+     */
+    public void start() {
+        if (registered) return;
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        Intent sticky = context.registerReceiver(receiver, filter);
+        registered = true;
+        if (sticky != null) onBatteryIntent(sticky);
+    }
+
+    public void stop() {
+        if (!registered) return;
+        context.unregisterReceiver(receiver);
+        registered = false;
+    }
+
+    /**
+     * Last known level in percent, or -1 if none was received yet.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public boolean isCharging() {
+        return charging;
+    }
+
+    public String getStatusSummary() {
+        return "Battery " + (level >= 0 ? level + "%" : "?")
+                + (charging ? " charging" : "")
+                + (temperature != Integer.MIN_VALUE ? " | " + temperature + " °C" : "")
+                + " | low power " + (lowPower ? "on" : "off") + " (below " + lowPowerLevel + "%)";
+    }
+
+    private void onBatteryIntent(Intent intent) {
+        int newLevel = readLevel(intent);
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        boolean newCharging = status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL
+                || intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        int rawTemperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, Integer.MIN_VALUE);
+        // Tenths of a degree; only whole degrees are worth a redraw
+        int newTemperature = rawTemperature != Integer.MIN_VALUE ? Math.round(rawTemperature / 10f) : Integer.MIN_VALUE;
+
+        if (newLevel == level && newCharging == charging && newTemperature == temperature) return;
+        level = newLevel;
+        charging = newCharging;
+        temperature = newTemperature;
+        if (listener != null) listener.onBatteryChanged(level, charging, temperature);
+        updateLowPower();
+    }
+
+    // Prefers the BatteryManager capacity property, the broadcast extras are only a fallback
+    private int readLevel(Intent intent) {
+        if (batteryManager != null) {
+            int capacity = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+            if (capacity > 0 && capacity <= 100) return capacity;
+        }
+        int raw = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (raw < 0 || scale <= 0) return -1;
+        return (int) ((raw / (float) scale) * 100);
+    }
+
+    private void updateLowPower() {
+        boolean saver = powerManager != null && powerManager.isPowerSaveMode();
+        boolean next;
+        if (charging || level < 0) {
+            next = saver;
+        } else if (lowPower) {
+            next = saver || level < lowPowerLevel + hysteresis;
+        } else {
+            next = saver || level < lowPowerLevel;
+        }
+        if (next == lowPower) return;
+        lowPower = next;
+        Log.i(TAG, "Low-power profile " + (next ? "on" : "off") + " at " + level + "%");
+        if (listener != null) listener.onLowPowerChanged(next);
+    }
+}
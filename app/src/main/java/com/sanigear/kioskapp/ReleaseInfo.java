@@ -0,0 +1,151 @@
+package com.sanigear.kioskapp;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The parts of a GitHub "latest release" response the updater needs: the tag and the assets.
+ * Parsed with a streaming reader that skips everything else (release notes, uploader, reactions),
+ * and stored compactly next to the ETag so a 304 can be answered from it.
+ */
+public class ReleaseInfo {
+
+    static final String APK_CONTENT_TYPE = "application/vnd.android.package-archive";
+
+    public static class Asset {
+        public final String name;
+        public final String url;
+        public final String contentType;
+        public final String digest;
+
+        Asset(String name, String url, String contentType, String digest) {
+            this.name = name;
+            this.url = url;
+            this.contentType = contentType;
+            this.digest = digest;
+        }
+    }
+
+    public final String tagName;
+    public final List<Asset> assets;
+
+    ReleaseInfo(String tagName, List<Asset> assets) {
+        this.tagName = tagName;
+        this.assets = assets;
+    }
+
+    /**
+     * Reads the release JSON from a stream; only tag_name and the asset fields are kept.
+     */
+    public static ReleaseInfo parse(InputStream in) throws IOException {
+        String tagName = null;
+        List<Asset> assets = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if ("tag_name".equals(field) && reader.peek() == JsonToken.STRING) {
+                    tagName = reader.nextString();
+                } else if ("assets".equals(field) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) assets.add(readAsset(reader));
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            // JsonReader reports malformed input this way
+            throw new IOException("Malformed release JSON", e);
+        }
+        if (tagName == null) throw new IOException("Release has no tag_name");
+        return new ReleaseInfo(tagName, assets);
+    }
+
+    private static Asset readAsset(JsonReader reader) throws IOException {
+        String name = null, url = null, contentType = null, digest = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() != JsonToken.STRING) {
+                reader.skipValue();
+                continue;
+            }
+            switch (field) {
+                case "name": name = reader.nextString(); break;
+                case "browser_download_url": url = reader.nextString(); break;
+                case "content_type": contentType = reader.nextString(); break;
+                case "digest": digest = reader.nextString(); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Asset(name, url, contentType, digest);
+    }
+
+    @Nullable
+    public Asset findAsset(String name) {
+        for (Asset asset : assets) {
+            if (name.equals(asset.name)) return asset;
+        }
+        return null;
+    }
+
+    /**
+     * The APK to install: an .apk asset served as an Android package, or failing that any .apk asset.
+     */
+    @Nullable
+    public Asset findApk() {
+        Asset byName = null;
+        for (Asset asset : assets) {
+            if (asset.name == null || asset.url == null) continue;
+            if (!asset.name.toLowerCase(Locale.US).endsWith(".apk")) continue;
+            if (APK_CONTENT_TYPE.equals(asset.contentType)) return asset;
+            if (byName == null) byName = asset;
+        }
+        return byName;
+    }
+
+    String toJson() {
+        try {
+            JSONArray array = new JSONArray();
+            for (Asset asset : assets) {
+                array.put(new JSONObject()
+                        .put("name", asset.name)
+                        .put("browser_download_url", asset.url)
+                        .put("content_type", asset.contentType)
+                        .put("digest", asset.digest));
+            }
+            return new JSONObject().put("tag_name", tagName).put("assets", array).toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static ReleaseInfo fromJson(String json) throws JSONException {
+        JSONObject object = new JSONObject(json);
+        JSONArray array = object.getJSONArray("assets");
+        List<Asset> assets = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject a = array.getJSONObject(i);
+            assets.add(new Asset(a.optString("name", null), a.optString("browser_download_url", null),
+                    a.optString("content_type", null), a.optString("digest", null)));
+        }
+        return new ReleaseInfo(object.getString("tag_name"), assets);
+    }
+}
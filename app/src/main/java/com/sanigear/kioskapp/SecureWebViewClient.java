@@ -0,0 +1,52 @@
+package com.sanigear.kioskapp;
+
+import android.net.Uri;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import com.sanigear.kioskapp.core.UrlPolicy;
+
+/**
+ * Keeps the kiosk WebView on the Sanigear portal; PDF links are handled natively.
+ * Portal assets are served through the offline-first asset cache when one is set.
+ */
+public class SecureWebViewClient extends WebViewClient {
+
+    // The benchmark build type swaps in a stand-in portal on loopback
+    static final String PORTAL_ORIGIN = BuildConfig.PORTAL_ORIGIN;
+    static final String ALLOWED_DOMAIN = BuildConfig.PORTAL_HOST;
+    static final UrlPolicy URL_POLICY = new UrlPolicy(ALLOWED_DOMAIN);
+
+    private final PortalAssetCache assetCache;
+
+    public SecureWebViewClient() {
+        this(null);
+    }
+
+    public SecureWebViewClient(PortalAssetCache assetCache) {
+        this.assetCache = assetCache;
+    }
+
+    @Override
+    public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+        Uri uri = request.getUrl();
+        return URL_POLICY.shouldBlockNavigation(uri.toString(), uri.getHost());
+    }
+
+    @Override
+    public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+        if (assetCache != null) {
+            WebResourceResponse cached = assetCache.intercept(request);
+            if (cached != null) return cached;
+        }
+        return super.shouldInterceptRequest(view, request);
+    }
+
+    @Override
+    public void onPageFinished(WebView view, String url) {
+        super.onPageFinished(view, url);
+        if (assetCache != null) assetCache.onPageFinished(url);
+    }
+}
@@ -0,0 +1,180 @@
+package com.sanigear.kioskapp;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.webkit.CookieManager;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tracks the portal login so a restart (update, renderer crash, reboot) goes straight back to
+ * the last authenticated page instead of the login form.
+ * Every authenticated page load extends the expected expiry by the portal's idle timeout
+ * ({@link KioskStore#SESSION_TTL_MINUTES}). Shortly before it runs out, a background request
+ * with the WebView's cookies keeps the session alive and takes any refreshed cookies back into
+ * the WebView. If the portal answers with the login page, the session is treated as gone. Cookies are
+ * flushed to disk at lifecycle points so a killed process doesn't lose a fresh login.
+ */
+public final class SessionManager {
+
+    private static final String TAG = "SessionManager";
+    private static final String REFRESH_TASK = "session-refresh";
+    private static final long REFRESH_BEFORE = 10 * 60 * 1000;
+    private static final long RETRY_DELAY = 5 * 60 * 1000;
+    private static final long REFRESH_TIMEOUT = 60 * 1000;
+
+    private final Context context;
+    private final String loginUrl;
+    private final String loginPath;
+    private final KioskStore store;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable refresh = this::refreshInBackground;
+
+    public SessionManager(Context context, String loginUrl) {
+        this.context = context.getApplicationContext();
+        this.loginUrl = loginUrl;
+        this.loginPath = Uri.parse(loginUrl).getPath();
+        this.store = KioskStore.get(context);
+    }
+
+    /**
+     * Schedules the next background refresh from the stored expiry.
+     */
+    public void start() {
+        scheduleRefresh();
+    }
+
+    public void stop() {
+        handler.removeCallbacks(refresh);
+    }
+
+    /**
+     * True while the portal session is expected to still be valid and its cookie is there.
+     */
+    public boolean isValid() {
+        return System.currentTimeMillis() < store.get(KioskStore.SESSION_EXPIRES_AT) && hasSessionCookie();
+    }
+
+    /**
+     * Where the kiosk should open: the last authenticated page while the session is valid,
+     * otherwise the login form.
+     */
+    public String startUrl() {
+        if (!isValid()) return loginUrl;
+        String lastUrl = store.get(KioskStore.LAST_URL);
+        if (lastUrl != null && isAuthenticatedPage(lastUrl)) return lastUrl;
+        String sessionUrl = store.get(KioskStore.SESSION_URL);
+        return sessionUrl != null ? sessionUrl : loginUrl;
+    }
+
+    /**
+     * Called for every finished main-frame load in the kiosk WebView.
+     */
+    public void onPageFinished(String url) {
+        if (!isAuthenticatedPage(url) || !hasSessionCookie()) return;
+        boolean wasValid = isValid();
+        store.put(KioskStore.SESSION_URL, url);
+        extend();
+        if (!wasValid) {
+            // Fresh login: make sure the cookie survives the process being killed
+            Log.d(TAG, "Signed in");
+            flush();
+        }
+    }
+
+    /**
+     * Writes the WebView's cookies to disk; call when the kiosk could be killed soon after.
+     */
+    public static void flush() {
+        CookieManager.getInstance().flush();
+    }
+
+    public String getStatusSummary() {
+        if (!isValid()) return "Session: signed out";
+        long minutes = (store.get(KioskStore.SESSION_EXPIRES_AT) - System.currentTimeMillis()) / 60000;
+        return "Session: valid, about " + minutes + " min left";
+    }
+
+    private boolean isAuthenticatedPage(String url) {
+        Uri uri = Uri.parse(url);
+        String path = uri.getPath() != null ? uri.getPath() : "";
+        return SecureWebViewClient.URL_POLICY.isAllowedHost(uri.getHost())
+                && !path.startsWith(loginPath) && !SecureWebViewClient.URL_POLICY.isPdf(url);
+    }
+
+    private boolean hasSessionCookie() {
+        String cookie = CookieManager.getInstance().getCookie(loginUrl);
+        return cookie != null && !cookie.isEmpty();
+    }
+
+    private void extend() {
+        long ttl = store.get(KioskStore.SESSION_TTL_MINUTES) * 60L * 1000;
+        store.put(KioskStore.SESSION_EXPIRES_AT, System.currentTimeMillis() + ttl);
+        scheduleRefresh();
+    }
+
+    private void expire() {
+        store.put(KioskStore.SESSION_EXPIRES_AT, 0L);
+        handler.removeCallbacks(refresh);
+    }
+
+    private void scheduleRefresh() {
+        handler.removeCallbacks(refresh);
+        long expiresAt = store.get(KioskStore.SESSION_EXPIRES_AT);
+        if (expiresAt <= System.currentTimeMillis()) return;
+        long delay = Math.max(0, expiresAt - REFRESH_BEFORE - System.currentTimeMillis());
+        handler.postDelayed(refresh, delay);
+    }
+
+    private void refreshInBackground() {
+        String url = store.get(KioskStore.SESSION_URL);
+        if (url == null || !isValid()) return;
+        KioskExecutor.get().submit(KioskExecutor.Lane.BACKGROUND, REFRESH_TASK, REFRESH_TIMEOUT, null, () -> {
+            Boolean alive = refreshNow(url);
+            handler.post(() -> {
+                if (alive == null) {
+                    handler.postDelayed(refresh, RETRY_DELAY); // Offline or portal hiccup, keep trying
+                } else if (alive) {
+                    extend();
+                } else {
+                    Log.d(TAG, "Session expired on the portal");
+                    expire();
+                }
+            });
+        });
+    }
+
+    // True if the portal still accepts the session, false if it sent us to the login, null if unknown
+    private Boolean refreshNow(String url) {
+        HttpURLConnection conn = null;
+        try {
+            conn = HttpTransport.get().open(url); // Carries the WebView's portal cookies
+            conn.setInstanceFollowRedirects(false);
+            int code = conn.getResponseCode();
+            List<String> setCookies = conn.getHeaderFields().get("Set-Cookie");
+            if (setCookies != null) {
+                CookieManager cookies = CookieManager.getInstance();
+                for (String setCookie : setCookies) cookies.setCookie(url, setCookie);
+                flush();
+            }
+            String location = conn.getHeaderField("Location");
+            if (code == HttpURLConnection.HTTP_UNAUTHORIZED || code == HttpURLConnection.HTTP_FORBIDDEN
+                    || (code / 100 == 3 && location != null && location.toLowerCase(Locale.US).contains(loginPath))) {
+                return false;
+            }
+            KioskLog.d(TAG, "Session refreshed, HTTP", code);
+            return code / 100 == 2 || code / 100 == 3 ? Boolean.TRUE : null;
+        } catch (IOException e) {
+            KioskLog.w(TAG, "Session refresh failed:", e.getMessage());
+            return null;
+        } finally {
+            HttpTransport.get().release(conn);
+        }
+    }
+}
@@ -2,18 +2,31 @@ package com.sanigear.kioskapp;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Gravity;
+import android.webkit.CookieManager;
+import android.webkit.WebSettings;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
 public class SplashActivity extends Activity {
+
+    private static final String PORTAL_URL = SecureWebViewClient.PORTAL_ORIGIN + "/";
+    private static final long MAX_WAIT = 3000; // Hand over after 3 seconds even if prewarm isn't done
+    private static final long PRECONNECT_TIMEOUT = 10000; // Upper bound for the whole pre-connect task
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private int pendingTasks = 0;
+    private boolean handedOver = false;
+    private long splashStart;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -21,10 +34,11 @@ public class SplashActivity extends Activity {
         // Skip splash screen if the activity is not the root activity (i.e., app is resuming)
         if (isTaskRoot()) {
             // Show splash screen only if this activity is the root of the task stack
-            new Handler().postDelayed(() -> {
-                startActivity(new Intent(this, MainActivity.class));
-                finish();
-            }, 3000); // 3 second delay for splash
+            splashStart = SystemClock.elapsedRealtime();
+            StartupTimer.begin(StartupTimer.WARM); // No-op during the cold start of the process
+            StartupTimer.mark("Splash created");
+            startPrewarm();
+            handler.postDelayed(() -> handOver("timeout"), MAX_WAIT);
         } else {
             // If the splash screen is skipped (activity already exists), directly load MainActivity
             startActivity(new Intent(this, MainActivity.class));
@@ -66,8 +80,7 @@ public class SplashActivity extends Activity {
 
         setContentView(layout);
 
-        SharedPreferences prefs = getSharedPreferences("kiosk_prefs", MODE_PRIVATE);
-        boolean firstLaunchDone = prefs.getBoolean("first_launch_done", false);
+        boolean firstLaunchDone = KioskStore.get(this).get(KioskStore.FIRST_LAUNCH_DONE);
 
         if (!firstLaunchDone) {
             Log.d("Splash", "First launch: delaying watchdog 15 seconds");
@@ -80,8 +93,49 @@ public class SplashActivity extends Activity {
     }
 
 
+    /**
+     * Starts the expensive first-load work in parallel; MainActivity is started as soon as all
+     * of it finished, or after MAX_WAIT.
+     */
+    private void startPrewarm() {
+        pendingTasks = 3;
+
+        // Provider and cookie loading must run on the main thread. Posting from the decor view's
+        // first traversal lets the splash draw before they block it.
+        getWindow().getDecorView().post(() -> handler.post(() -> {
+            WebSettings.getDefaultUserAgent(this);  // Loads the WebView provider
+            taskDone("WebView provider");
+            handler.post(() -> {
+                CookieManager.getInstance().getCookie(PORTAL_URL);  // Loads the cookie store
+                taskDone("Cookies");
+            });
+        }));
+
+        // DNS, TCP and TLS are done up front; the socket and TLS session stay in the shared
+        // transport's pool for native PDF and asset downloads
+        KioskExecutor.get().submit(KioskExecutor.Lane.INTERACTIVE, "preconnect", PRECONNECT_TIMEOUT, null, () -> {
+            HttpTransport.get().preconnectNow(PORTAL_URL);
+            handler.post(() -> taskDone("Pre-connect"));
+        });
+    }
+
+    private void taskDone(String task) {
+        StartupTimer.mark(task + " ready");
+        if (--pendingTasks == 0) handOver("ready");
+    }
+
+    private void handOver(String reason) {
+        if (handedOver || isFinishing()) return;
+        handedOver = true;
+        Log.d("Splash", "Handing over after " + (SystemClock.elapsedRealtime() - splashStart) + " ms (" + reason + ")");
+        startActivity(new Intent(this, MainActivity.class));
+        finish();
+    }
+
     private void startWatchdogService() {
         Intent serviceIntent = new Intent(this, AppWatchdogService.class);
         startService(serviceIntent);
+        // Only the very first launch waits; device owner setup is done by now
+        KioskStore.get(this).put(KioskStore.FIRST_LAUNCH_DONE, true);
     }
 }
@@ -0,0 +1,184 @@
+package com.sanigear.kioskapp;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures cold start, warm start and resume-from-PDF-viewer times.
+ * Each run records its milestones (splash, MainActivity, WebView creation, first page) relative
+ * to its start and is appended as one JSON line to files/startup_metrics.jsonl, flagged when it
+ * went over its budget so regressions can be picked up from the device. The first page also
+ * calls reportFullyDrawn(), which the :benchmark module's startup benchmarks measure against a
+ * stand-in portal on loopback (the benchmark build type) and gate the build on.
+ */
+public final class StartupTimer {
+
+    private static final String TAG = "StartupTimer";
+    private static final String RESULTS_FILE = "startup_metrics.jsonl";
+    private static final int MAX_RESULTS = 200;
+
+    public static final String COLD = "cold";
+    public static final String WARM = "warm";
+    public static final String RESUME_FROM_PDF = "resume_from_pdf";
+
+    // Budgets per start type, in ms
+    private static final long COLD_BUDGET = 8000;
+    private static final long WARM_BUDGET = 3000;
+    private static final long RESUME_BUDGET = 500;
+    // A run that hasn't finished by then never will, e.g. the first page failed to load
+    private static final long MAX_RUN = 60 * 1000;
+
+    private static String type = COLD;
+    private static String trigger = "launcher";
+    private static long startedAt = Process.getStartElapsedRealtime();
+    private static Map<String, Long> milestones = new LinkedHashMap<>();
+    private static boolean finished = false;
+
+    private StartupTimer() {}
+
+    /**
+     * Milliseconds since this process was started.
+     */
+    public static long sinceProcessStart() {
+        return SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+    }
+
+    /**
+     * Records what launched the kiosk (boot, package replaced, ...) for the current run.
+     */
+    public static synchronized void setTrigger(String source) {
+        trigger = source;
+        mark("Trigger " + source);
+    }
+
+    /**
+     * Starts a new measured run in an already running process (warm start or resume).
+     * Ignored while the run of the current launch is still being measured, e.g. MainActivity
+     * following the splash; a run older than {@link #MAX_RUN} is given up and replaced.
+     */
+    public static synchronized void begin(String runType) {
+        if (!finished && SystemClock.elapsedRealtime() - startedAt < MAX_RUN) return;
+        if (!finished) Log.w(TAG, type + " run never finished, dropped");
+        type = runType;
+        startedAt = SystemClock.elapsedRealtime();
+        milestones = new LinkedHashMap<>();
+        finished = false;
+        if (!RESUME_FROM_PDF.equals(runType)) trigger = "launcher";
+    }
+
+    /**
+     * Ends the current run without a result when it can't finish, e.g. the kiosk started offline
+     * or went to the background before the first page. The next {@link #begin} starts fresh.
+     */
+    public static synchronized void abandon(String reason) {
+        if (finished) return;
+        finished = true;
+        Log.d(TAG, type + " run abandoned: " + reason);
+    }
+
+    public static synchronized void mark(String milestone) {
+        long offset = SystemClock.elapsedRealtime() - startedAt;
+        if (!finished) milestones.put(milestone, offset);
+        Log.d(TAG, type + ": " + milestone + " at " + offset + " ms");
+    }
+
+    /**
+     * Ends a warm or cold run at the first finished portal page.
+     */
+    public static void onPageFinished(Context context) {
+        // Also time to full display for the startup benchmarks
+        if (finish(context, "First page finished", COLD, WARM) && context instanceof Activity) {
+            ((Activity) context).reportFullyDrawn();
+        }
+    }
+
+    /**
+     * Ends a resume-from-PDF run once the kiosk is drawn again.
+     */
+    public static void onResumed(Context context) {
+        finish(context, "Resumed", RESUME_FROM_PDF);
+    }
+
+    // True if this call ended the run
+    private static boolean finish(Context context, String milestone, String... runTypes) {
+        JSONObject result;
+        synchronized (StartupTimer.class) {
+            if (finished || !matches(type, runTypes)) return false;
+            mark(milestone);
+            finished = true;
+
+            long total = SystemClock.elapsedRealtime() - startedAt;
+            long budget = COLD.equals(type) ? COLD_BUDGET : WARM.equals(type) ? WARM_BUDGET : RESUME_BUDGET;
+            result = new JSONObject();
+            try {
+                result.put("type", type);
+                result.put("trigger", trigger);
+                result.put("timestamp", System.currentTimeMillis());
+                result.put("totalMs", total);
+                result.put("budgetMs", budget);
+                result.put("overBudget", total > budget);
+                JSONObject marks = new JSONObject();
+                for (Map.Entry<String, Long> entry : milestones.entrySet()) {
+                    marks.put(entry.getKey(), entry.getValue());
+                }
+                result.put("milestones", marks);
+            } catch (Exception e) {
+                Log.w(TAG, "Could not build startup result", e);
+                return true;
+            }
+            if (total > budget) {
+                Log.w(TAG, type + " start took " + total + " ms, over the " + budget + " ms budget");
+            } else {
+                Log.i(TAG, type + " start took " + total + " ms");
+            }
+        }
+        File file = new File(context.getFilesDir(), RESULTS_FILE);
+        KioskExecutor.get().submit(KioskExecutor.Lane.BACKGROUND, null, 10000, null,
+                () -> append(file, result.toString()));
+        return true;
+    }
+
+    private static boolean matches(String value, String... options) {
+        for (String option : options) if (option.equals(value)) return true;
+        return false;
+    }
+
+    // Appends one result line, keeping only the most recent MAX_RESULTS
+    private static synchronized void append(File file, String line) {
+        List<String> lines = new ArrayList<>();
+        if (file.isFile()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String existing;
+                while ((existing = reader.readLine()) != null) lines.add(existing);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read " + file.getName(), e);
+            }
+        }
+        lines.add(line);
+        int from = Math.max(0, lines.size() - MAX_RESULTS);
+        try (Writer writer = new FileWriter(file)) {
+            for (String l : lines.subList(from, lines.size())) {
+                writer.write(l);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write " + file.getName(), e);
+        }
+    }
+}
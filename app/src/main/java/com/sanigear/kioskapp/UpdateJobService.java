@@ -0,0 +1,186 @@
+package com.sanigear.kioskapp;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.sanigear.kioskapp.core.MaintenanceWindow;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.concurrent.Future;
+
+/**
+ * Automatic updates in two scheduled steps, so they never compete with the portal or restart
+ * the kiosk in front of an operator:
+ * <ol>
+ *   <li>Staging: a daily job that only runs on an unmetered network while the tablet is charging
+ *   and idle. It checks the release and downloads and verifies the APK, but doesn't install it.</li>
+ *   <li>Install: a one-off job for the next maintenance window ({@link KioskStore#MAINTENANCE_START}
+ *   and {@link KioskStore#MAINTENANCE_END}, minutes after midnight, default 02:00 to 05:00). It is held back while
+ *   someone has used the kiosk recently, and moves to the next window if this one runs out.</li>
+ * </ol>
+ * The scheduled install is silent through PackageInstaller, which needs the app to be device owner.
+ * The admin's "Check for Update" button still checks and installs right away.
+ */
+public class UpdateJobService extends JobService {
+
+    private static final String TAG = "UpdateJobService";
+    private static final int JOB_STAGE = 1001;
+    private static final int JOB_INSTALL = 1002;
+    private static final String INSTALL_TASK = "update-install";
+    private static final long STAGE_PERIOD = 24 * 60 * 60 * 1000;
+    private static final long QUIET_TIME = 10 * 60 * 1000; // No touches for this long before a restart
+    private static final long INSTALL_RETRY = 15 * 60 * 1000;
+
+    // Elapsed realtime of the last touch on the kiosk; 0 if none since the process started
+    private static volatile long lastUserActivity;
+
+    /**
+     * Schedules the daily staging job if it isn't already; safe to call on every start.
+     * Talks to the job scheduler service, so call it off the main thread.
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler == null) return;
+        if (scheduler.getPendingJob(JOB_STAGE) == null) {
+            JobInfo job = new JobInfo.Builder(JOB_STAGE, new ComponentName(context, UpdateJobService.class))
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                    .setRequiresCharging(true)
+                    .setRequiresDeviceIdle(true)
+                    .setPeriodic(STAGE_PERIOD)
+                    .setPersisted(true)
+                    .build();
+            scheduler.schedule(job);
+            Log.d(TAG, "Staging job scheduled");
+        }
+
+        // A staged update whose install job was lost, e.g. cleared with the app's data
+        if (Utils.hasStagedUpdate(context) && scheduler.getPendingJob(JOB_INSTALL) == null) {
+            scheduleInstall(context, 0);
+        }
+    }
+
+    /**
+     * Called for every touch on the kiosk, so a restart waits until it has been quiet for a while.
+     */
+    public static void noteUserActivity() {
+        lastUserActivity = SystemClock.elapsedRealtime();
+    }
+
+    static MaintenanceWindow maintenanceWindow(Context context) {
+        KioskStore store = KioskStore.get(context);
+        return new MaintenanceWindow(store.get(KioskStore.MAINTENANCE_START), store.get(KioskStore.MAINTENANCE_END));
+    }
+
+    // Runs the install job at the next window opening, or after minDelay if that is later
+    private static void scheduleInstall(Context context, long minDelay) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler == null) return;
+        Calendar now = Calendar.getInstance();
+        MaintenanceWindow window = maintenanceWindow(context);
+        long delay = Math.max(minDelay, window.millisUntilOpen(now));
+        if (minDelay > 0 && window.millisUntilClose(now) < minDelay) {
+            // The retry would land after the window closes; wait for the next one
+            Calendar closed = (Calendar) now.clone();
+            closed.setTimeInMillis(now.getTimeInMillis() + window.millisUntilClose(now));
+            delay = window.millisUntilClose(now) + window.millisUntilOpen(closed);
+        }
+        JobInfo job = new JobInfo.Builder(JOB_INSTALL, new ComponentName(context, UpdateJobService.class))
+                .setMinimumLatency(delay)
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+        Log.d(TAG, "Install job scheduled in " + delay / 60000 + " min (window " + window + ")");
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        switch (params.getJobId()) {
+            case JOB_STAGE:
+                return startStaging(params);
+            case JOB_INSTALL:
+                if (KioskExecutor.get().isInFlight(INSTALL_TASK)) return false;
+                // Checking the staged APK's digest takes a moment; job callbacks run on the main thread
+                Future<?> install = KioskExecutor.get().submit(KioskExecutor.Lane.BACKGROUND, INSTALL_TASK, 60000, null, () -> {
+                    try {
+                        tryInstall();
+                    } finally {
+                        jobFinished(params, false);
+                    }
+                });
+                // A dropped task never calls jobFinished, so the job must not be reported as running
+                return !install.isCancelled();
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Constraints no longer hold, e.g. unplugged or the screen came on; ApkDownloader resumes next time
+        if (params.getJobId() == JOB_STAGE) {
+            KioskExecutor.get().cancel(Utils.UPDATE_TASK);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean startStaging(JobParameters params) {
+        if (KioskExecutor.get().isInFlight(Utils.UPDATE_TASK)) return false; // The admin is updating by hand
+        Future<?> staging = KioskExecutor.get().submit(KioskExecutor.Lane.BACKGROUND, Utils.UPDATE_TASK, Utils.UPDATE_TIMEOUT, null, () -> {
+            boolean retry = false;
+            try {
+                if (Utils.stageUpdate(this)) {
+                    Log.d(TAG, "Update staged, install held for the maintenance window");
+                    scheduleInstall(this, 0);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Update staging failed", e);
+                retry = !Thread.currentThread().isInterrupted();
+            } finally {
+                jobFinished(params, retry);
+            }
+        });
+        return !staging.isCancelled(); // Lane full
+    }
+
+    private void tryInstall() {
+        File apkFile = Utils.stagedUpdate(this);
+        if (apkFile == null) {
+            Log.d(TAG, "Nothing staged to install");
+            return;
+        }
+        if (!maintenanceWindow(this).contains(Calendar.getInstance())) {
+            scheduleInstall(this, 0);
+            return;
+        }
+        PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        boolean screenOn = pm == null || pm.isInteractive();
+        long sinceTouch = SystemClock.elapsedRealtime() - lastUserActivity;
+        if (screenOn && lastUserActivity > 0 && sinceTouch < QUIET_TIME) {
+            Log.d(TAG, "Kiosk in use, install postponed");
+            scheduleInstall(this, INSTALL_RETRY);
+            return;
+        }
+        // The installer prompt would wait for a confirmation nobody gives at this hour, so only
+        // a device owner installs here; otherwise the admin installs it with "Check for Update"
+        try {
+            if (Utils.installSilently(this, apkFile)) {
+                Log.d(TAG, "Installing staged update " + apkFile.getName());
+            } else {
+                Log.w(TAG, "Not device owner, staged update left for the admin");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Staged update install failed", e);
+            scheduleInstall(this, INSTALL_RETRY);
+        }
+    }
+}
@@ -1,139 +1,313 @@
 package com.sanigear.kioskapp;
 
+import android.app.PendingIntent;
+import android.app.admin.DevicePolicyManager;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.pm.PackageInstaller;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
 import androidx.core.content.FileProvider;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
+import com.sanigear.kioskapp.core.DeltaPatcher;
+import com.sanigear.kioskapp.core.Hashes;
+import com.sanigear.kioskapp.core.Versions;
 
 import java.io.*;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.Locale;
 
 public class Utils {
 
+    static final String UPDATE_TASK = "update-check";
+    private static final String RELEASES_URL = "https://api.github.com/repos/jhermo1229/SanigearKioskReleases/releases/latest";
+    static final long UPDATE_TIMEOUT = 15 * 60 * 1000; // Check plus APK download
+
     public interface UpdateListener {
         void onUpToDate();
         void onUpdateAvailable();
         void onError(Exception e);
-    }
 
-    public static void checkForUpdate(Context context) {
-        checkForUpdate(context, null);
+        // Called on the main thread while the APK downloads
+        default void onProgress(long bytesDone, long totalBytes, long bytesPerSecond) {}
     }
 
-    public static void checkForUpdate(Context context, @Nullable UpdateListener listener) {
-        SharedPreferences prefs = context.getSharedPreferences("update_prefs", Context.MODE_PRIVATE);
-        prefs.edit().putBoolean("first_launch_done", true).apply();
-        long lastCheck = prefs.getLong("last_check", 0);
-        long now = System.currentTimeMillis();
-
-        // Only auto-check once a week (unless user manually triggers)
-        if (listener == null && now - lastCheck < 7 * 24 * 60 * 60 * 1000) return;
-
-        new Thread(() -> {
+    /**
+     * Checks right away and installs as soon as the APK is verified; for the admin's
+     * "Check for Update" button. Automatic updates go through {@link UpdateJobService} instead.
+     */
+    public static void checkForUpdate(Context context, UpdateListener listener) {
+        // Single-flight: never two checks or APK downloads at once
+        if (KioskExecutor.get().isInFlight(UPDATE_TASK)) {
+            new Handler(Looper.getMainLooper()).post(() ->
+                    listener.onError(new IOException("An update check is already running")));
+            return;
+        }
+        KioskExecutor.get().submit(KioskExecutor.Lane.BACKGROUND, UPDATE_TASK, UPDATE_TIMEOUT, null, () -> {
             try {
-                Log.d("UpdateUtils", "Checking GitHub for latest release...");
-                URL url = new URL("https://api.github.com/repos/jhermo1229/SanigearKioskReleases/releases/latest");
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestProperty("Accept", "application/vnd.github.v3+json");
-
-                if (conn.getResponseCode() != 200)
-                    throw new IOException("GitHub API error " + conn.getResponseCode());
-
-                BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) sb.append(line);
-                reader.close();
-
-                JSONObject json = new JSONObject(sb.toString());
-                String latestTag = json.getString("tag_name")
-                        .replace("SanigearKiosk_v", "")  // Strip the tag prefix
-                        .replace("v", "");               // Just in case
-
-                JSONArray assets = json.getJSONArray("assets");
-                if (assets.length() == 0)
-                    throw new IOException("No APK asset found in latest GitHub release");
-
-                String apkUrl = assets.getJSONObject(0).getString("browser_download_url");
-
-                String currentVersion = context.getPackageManager()
-                        .getPackageInfo(context.getPackageName(), 0).versionName;
-
-                Log.d("UpdateUtils", "Latest tag: " + latestTag + " | Current: " + currentVersion);
-
-                if (isNewerVersion(latestTag, currentVersion)) {
-                    Log.d("UpdateUtils", "Newer version found, downloading...");
-                    new Handler(Looper.getMainLooper()).post(() -> {
-                        Toast.makeText(context, "Update available — downloading...", Toast.LENGTH_LONG).show();
-                        if (listener != null) listener.onUpdateAvailable();
-                    });
-                    downloadAndInstall(context, apkUrl);
+                File apkFile = stage(context, listener);
+                if (apkFile != null) {
+                    installApk(context, apkFile);
                 } else {
-                    Log.d("UpdateUtils", "App is already up to date.");
-                    if (listener != null) {
-                        new Handler(Looper.getMainLooper()).post(listener::onUpToDate);
-                    }
+                    new Handler(Looper.getMainLooper()).post(listener::onUpToDate);
                 }
-
-                prefs.edit().putLong("last_check", now).apply();
-
             } catch (Exception e) {
                 Log.e("UpdateUtils", "Update check failed", e);
-                if (listener != null) {
-                    new Handler(Looper.getMainLooper()).post(() ->
-                            listener.onError(e)
-                    );
-                }
+                new Handler(Looper.getMainLooper()).post(() -> listener.onError(e));
             }
-        }).start();
+        });
+    }
+
+    /**
+     * Checks for a newer release and downloads and verifies it without installing, for the
+     * background job. Runs on the calling thread.
+     *
+     * @return true if a verified update is staged and waiting for the maintenance window
+     */
+    static boolean stageUpdate(Context context) throws Exception {
+        return stage(context, null) != null;
+    }
+
+    // Fetches the release and, if it is newer, the verified APK; null when already up to date
+    @Nullable
+    private static File stage(Context context, @Nullable UpdateListener listener) throws Exception {
+        KioskStore store = KioskStore.get(context);
+        Log.d("UpdateUtils", "Checking GitHub for latest release...");
+        ReleaseInfo release = fetchLatestRelease(store);
+        String latestTag = Versions.fromTag(release.tagName);
+
+        ReleaseInfo.Asset apkAsset = release.findApk();
+        if (apkAsset == null)
+            throw new IOException("No APK asset found in latest GitHub release");
+        String apkUrl = apkAsset.url;
+        String apkSha256 = findSha256(apkAsset, release);
+
+        String currentVersion = context.getPackageManager()
+                .getPackageInfo(context.getPackageName(), 0).versionName;
+
+        Log.d("UpdateUtils", "Latest tag: " + latestTag + " | Current: " + currentVersion);
+        store.put(KioskStore.LAST_UPDATE_CHECK, System.currentTimeMillis());
+
+        if (!Versions.isNewer(latestTag, currentVersion)) {
+            Log.d("UpdateUtils", "App is already up to date.");
+            clearStaged(store);
+            return null;
+        }
+
+        Log.d("UpdateUtils", "Newer version found, downloading...");
+        if (listener != null) {
+            new Handler(Looper.getMainLooper()).post(() -> {
+                Toast.makeText(context, "Update available — downloading...", Toast.LENGTH_LONG).show();
+                listener.onUpdateAvailable();
+            });
+        }
+        File apkFile = downloadVerified(context, apkUrl, apkSha256, listener,
+                new DeltaSource(release, currentVersion, latestTag));
+        store.put(KioskStore.STAGED_APK, apkFile.getAbsolutePath());
+        store.put(KioskStore.STAGED_VERSION, latestTag);
+        store.put(KioskStore.STAGED_SHA256, apkSha256);
+        return apkFile;
+    }
+
+    static boolean hasStagedUpdate(Context context) {
+        return KioskStore.get(context).contains(KioskStore.STAGED_APK);
+    }
+
+    /**
+     * The staged APK if it is still on disk, unmodified and newer than the installed version.
+     */
+    @Nullable
+    static File stagedUpdate(Context context) {
+        KioskStore store = KioskStore.get(context);
+        String path = store.get(KioskStore.STAGED_APK);
+        String version = store.get(KioskStore.STAGED_VERSION);
+        if (path == null || version == null) return null;
+        try {
+            String currentVersion = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).versionName;
+            File apkFile = new File(path);
+            String sha256 = store.get(KioskStore.STAGED_SHA256);
+            if (Versions.isNewer(version, currentVersion) && apkFile.isFile()
+                    && (sha256 == null || sha256.equalsIgnoreCase(Hashes.sha256Hex(apkFile)))) {
+                return apkFile;
+            }
+        } catch (Exception e) {
+            Log.w("UpdateUtils", "Staged update unusable", e);
+        }
+        clearStaged(store);
+        return null;
+    }
+
+    private static void clearStaged(KioskStore store) {
+        store.remove(KioskStore.STAGED_APK);
+        store.remove(KioskStore.STAGED_VERSION);
+        store.remove(KioskStore.STAGED_SHA256);
+    }
 
+    /**
+     * Latest release, revalidated with the stored ETag so an unchanged release costs a 304.
+     * The URL can be pointed at a local stand-in server through {@link KioskStore#RELEASES_URL}.
+     */
+    static ReleaseInfo fetchLatestRelease(KioskStore store) throws Exception {
+        String url = store.get(KioskStore.RELEASES_URL);
+        if (url == null) url = RELEASES_URL;
+        String etag = store.get(KioskStore.RELEASE_ETAG);
+        String cached = store.get(KioskStore.RELEASE_JSON);
+
+        long startedAt = SystemClock.elapsedRealtime();
+        HttpURLConnection conn = HttpTransport.get().open(url);
+        conn.setRequestProperty("Accept", "application/vnd.github.v3+json");
+        if (etag != null && cached != null) conn.setRequestProperty("If-None-Match", etag);
+        try {
+            int code = conn.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                Metrics.counter("update.not_modified").increment();
+                Log.d("UpdateUtils", "Release unchanged (304)");
+                return ReleaseInfo.fromJson(cached);
+            }
+            if (code != HttpURLConnection.HTTP_OK)
+                throw new IOException("GitHub API error " + code);
+
+            ReleaseInfo release = ReleaseInfo.parse(conn.getInputStream());
+            store.put(KioskStore.RELEASE_ETAG, conn.getHeaderField("ETag"));
+            store.put(KioskStore.RELEASE_JSON, release.toJson());
+            return release;
+        } finally {
+            HttpTransport.get().release(conn);
+            Metrics.histogram(Metrics.UPDATE_CHECK_MS).record(SystemClock.elapsedRealtime() - startedAt);
+        }
     }
 
-    private static boolean isNewerVersion(String newVer, String oldVer) {
-        // Naive string compare assumes "1.2" > "1.1"
-        return newVer.compareTo(oldVer) > 0;
+    /**
+     * SHA-256 of the APK from the release metadata: the asset's "digest" field, or a companion
+     * "<apk name>.sha256" asset. Returns null if the release publishes neither.
+     */
+    @Nullable
+    private static String findSha256(ReleaseInfo.Asset apkAsset, ReleaseInfo release) {
+        String digest = apkAsset.digest != null ? apkAsset.digest : "";
+        if (digest.startsWith("sha256:")) return digest.substring("sha256:".length()).toLowerCase(Locale.US);
+
+        String checksumName = apkAsset.name + ".sha256";
+        ReleaseInfo.Asset asset = release.findAsset(checksumName);
+        if (asset != null && asset.url != null) {
+            try {
+                HttpURLConnection conn = HttpTransport.get().open(asset.url);
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
+                    String line = reader.readLine();
+                    // sha256sum format: "<hex>  <file name>"
+                    if (line != null) return line.trim().split("\\s+")[0].toLowerCase(Locale.US);
+                } finally {
+                    HttpTransport.get().release(conn);
+                }
+            } catch (Exception e) {
+                Log.w("UpdateUtils", "Could not read " + checksumName, e);
+            }
+        }
+        return null;
     }
 
-    private static void downloadAndInstall(Context context, String apkUrl) throws IOException {
-        Log.d("UpdateUtils", "Starting download from: " + apkUrl);
+    // Release assets and versions needed to look for a delta patch
+    private static class DeltaSource {
+        final ReleaseInfo release;
+        final String fromVersion;
+        final String toVersion;
 
-        File apkFile = File.createTempFile("update", ".apk", context.getCacheDir());
-        HttpURLConnection conn = (HttpURLConnection) new URL(apkUrl).openConnection();
-        conn.connect();
+        DeltaSource(ReleaseInfo release, String fromVersion, String toVersion) {
+            this.release = release;
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+        }
+    }
 
-        if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
-            throw new IOException("Failed to download APK. HTTP " + conn.getResponseCode());
+    /**
+     * Rebuilds the new APK from the installed one and a "SanigearKiosk_<from>_to_<to>.patch"
+     * release asset. Returns null if there is no matching patch or anything goes wrong, so the
+     * caller falls back to the full APK.
+     */
+    @Nullable
+    private static File tryDeltaUpdate(Context context, ApkDownloader downloader, DeltaSource delta,
+                                       String expectedSha256, ApkDownloader.ProgressListener progress) {
+        String patchName = "SanigearKiosk_" + delta.fromVersion + "_to_" + delta.toVersion + ".patch";
+        ReleaseInfo.Asset patchAsset = delta.release.findAsset(patchName);
+        if (patchAsset == null || patchAsset.url == null) {
+            Log.d("UpdateUtils", "No delta patch " + patchName + ", using full APK");
+            return null;
         }
 
-        try (InputStream in = new BufferedInputStream(conn.getInputStream());
-             OutputStream out = new FileOutputStream(apkFile)) {
+        File patched = new File(context.getFilesDir(), "updates/patched-" + delta.toVersion + ".apk");
+        File patchFile = null;
+        try {
+            Log.d("UpdateUtils", "Downloading delta patch from: " + patchAsset.url);
+            patchFile = downloader.download(patchAsset.url, findSha256(patchAsset, delta.release), progress, ".patch");
+
+            File installedApk = new File(context.getApplicationInfo().sourceDir);
+            DeltaPatcher.apply(installedApk, patchFile, patched);
 
-            byte[] buf = new byte[4096];
-            int len;
-            while ((len = in.read(buf)) > 0) {
-                out.write(buf, 0, len);
+            String actual = Hashes.sha256Hex(patched);
+            if (!expectedSha256.equalsIgnoreCase(actual)) {
+                throw new IOException("Patched APK digest mismatch: expected " + expectedSha256 + " got " + actual);
             }
+            Log.d("UpdateUtils", "Delta update applied, " + patchFile.length() + " bytes instead of full APK");
+            return patched;
+        } catch (Exception e) {
+            Log.w("UpdateUtils", "Delta update failed, falling back to full APK", e);
+            patched.delete();
+            return null;
+        } finally {
+            if (patchFile != null) patchFile.delete();
         }
+    }
+
+    // Peer, delta patch or full download, in that order; the returned APK is verified when the digest is known
+    private static File downloadVerified(Context context, String apkUrl, @Nullable String sha256,
+                                         @Nullable UpdateListener listener, DeltaSource delta) throws IOException {
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        File updatesDir = new File(context.getFilesDir(), "updates");
+        ApkDownloader downloader = new ApkDownloader(updatesDir);
+        ApkDownloader.ProgressListener progress = (done, total, bytesPerSecond) -> {
+            Log.d("UpdateUtils", "Downloaded " + done + "/" + total + " bytes at " + bytesPerSecond / 1024 + " KB/s");
+            if (listener != null) {
+                mainHandler.post(() -> listener.onProgress(done, total, bytesPerSecond));
+            }
+        };
+
+        // Peers and rebuilt APKs can only be trusted if the full APK's digest is known
+        File apkFile = null;
+        if (sha256 != null) {
+            apkFile = PeerUpdates.get(context).fetch(sha256, updatesDir);
+            if (apkFile == null) apkFile = tryDeltaUpdate(context, downloader, delta, sha256, progress);
+        }
+        if (apkFile == null) {
+            Log.d("UpdateUtils", "Starting download from: " + apkUrl);
+            apkFile = downloader.download(apkUrl, sha256, progress);
+        }
+        // Other kiosks can take it from here while this one installs
+        if (sha256 != null) PeerUpdates.get(context).offer(delta.toVersion, sha256, apkFile);
 
         Log.d("UpdateUtils", "APK saved to: " + apkFile.getAbsolutePath());
+        return apkFile;
+    }
 
+    /**
+     * Hands the APK to the package installer; the app restarts through {@link AppUpdateReceiver}.
+     */
+    static void installApk(Context context, File apkFile) {
         Uri apkUri = FileProvider.getUriForFile(context,
                 context.getPackageName() + ".fileprovider", apkFile);
 
         Intent intent = new Intent(Intent.ACTION_VIEW);
         intent.setDataAndType(apkUri, "application/vnd.android.package-archive");
         intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        // The install kills the process before delayed writes would run
+        KioskStore.get(context).flush();
+        SessionManager.flush();
         context.startActivity(intent);
 
         new Handler(Looper.getMainLooper()).post(() ->
@@ -141,4 +315,49 @@ public class Utils {
         );
 
     }
+
+    /**
+     * Installs the APK through a PackageInstaller session without a prompt, which only a device
+     * owner may do; for unattended installs. The result arrives in {@link InstallResultReceiver},
+     * and on success the app restarts through {@link AppUpdateReceiver}.
+     *
+     * @return false if the app isn't device owner and nothing was installed
+     */
+    static boolean installSilently(Context context, File apkFile) throws IOException {
+        DevicePolicyManager dpm = (DevicePolicyManager) context.getSystemService(Context.DEVICE_POLICY_SERVICE);
+        if (dpm == null || !dpm.isDeviceOwnerApp(context.getPackageName())) return false;
+
+        PackageInstaller installer = context.getPackageManager().getPackageInstaller();
+        PackageInstaller.SessionParams params =
+                new PackageInstaller.SessionParams(PackageInstaller.SessionParams.MODE_FULL_INSTALL);
+        params.setAppPackageName(context.getPackageName());
+        params.setSize(apkFile.length());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            params.setRequireUserAction(PackageInstaller.SessionParams.USER_ACTION_NOT_REQUIRED);
+        }
+        int sessionId = installer.createSession(params);
+        try (PackageInstaller.Session session = installer.openSession(sessionId)) {
+            try (InputStream in = new FileInputStream(apkFile);
+                 OutputStream out = session.openWrite("base.apk", 0, apkFile.length())) {
+                byte[] buf = new byte[64 * 1024];
+                int len;
+                while ((len = in.read(buf)) > 0) out.write(buf, 0, len);
+                session.fsync(out);
+            }
+            // The installer fills in the status extras, so the intent has to stay mutable
+            int flags = PendingIntent.FLAG_UPDATE_CURRENT
+                    | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? PendingIntent.FLAG_MUTABLE : 0);
+            PendingIntent result = PendingIntent.getBroadcast(context, sessionId,
+                    new Intent(context, InstallResultReceiver.class), flags);
+            // The install kills the process before delayed writes would run
+            KioskStore.get(context).flush();
+            SessionManager.flush();
+            session.commit(result.getIntentSender());
+        } catch (IOException | RuntimeException e) {
+            installer.abandonSession(sessionId);
+            throw e;
+        }
+        Log.d("UpdateUtils", "Install session " + sessionId + " committed for " + apkFile.getName());
+        return true;
+    }
 }
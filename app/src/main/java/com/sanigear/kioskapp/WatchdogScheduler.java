@@ -0,0 +1,158 @@
+package com.sanigear.kioskapp;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Runs the watchdog check on its own background looper with a cadence that follows device state:
+ * fast right after handing off to an external app, slow while the screen is off or lock task mode
+ * is active or the battery is low, and not at all while paused by the admin.
+ */
+public class WatchdogScheduler {
+
+    private static final String TAG = "WatchdogScheduler";
+
+    static final long INTERVAL_BOOST = 500;    // Right after an external viewer was opened
+    static final long INTERVAL_NORMAL = 2000;  // Kiosk unlocked, screen on
+    static final long INTERVAL_IDLE = 10000;   // Screen off or lock task mode active
+    static final long INTERVAL_LOW_POWER = 5000;       // Low-power profile, screen on
+    static final long INTERVAL_LOW_POWER_IDLE = 30000; // Low-power profile, screen off or lock task
+    static final long BOOST_WINDOW = 30000;    // How long the fast cadence lasts
+
+    private final ActivityManager activityManager;
+    private final Runnable tick;
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    private volatile boolean running = false;
+    private volatile boolean paused = false;
+    private volatile boolean screenOff = false;
+    private volatile long boostUntil = 0;
+
+    // Tick timing, written on the watchdog thread only
+    private volatile long tickCount = 0;
+    private volatile long lastTickNanos = 0;
+    private volatile long maxTickNanos = 0;
+    private volatile long totalTickNanos = 0;
+    private volatile long currentInterval = INTERVAL_NORMAL;
+
+    private final Runnable loop = new Runnable() {
+        @Override
+        public void run() {
+            if (!running || paused) return;
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            try {
+                tick.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Watchdog tick failed", e);
+            }
+            recordTick(SystemClock.elapsedRealtimeNanos() - start);
+
+            currentInterval = nextInterval();
+            Metrics.gauge(Metrics.WATCHDOG_INTERVAL_MS).set(currentInterval);
+            handler.postDelayed(this, currentInterval);
+        }
+    };
+
+    public WatchdogScheduler(Context context, Runnable tick) {
+        this.activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        this.tick = tick;
+        this.thread = new HandlerThread("KioskWatchdog", Process.THREAD_PRIORITY_BACKGROUND);
+        this.thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Handler of the watchdog looper, for callers that want to run work on the same thread.
+     */
+    public Handler getHandler() {
+        return handler;
+    }
+
+    public void start() {
+        running = true;
+        reschedule();
+    }
+
+    public void quit() {
+        running = false;
+        handler.removeCallbacksAndMessages(null);
+        thread.quitSafely();
+    }
+
+    /**
+     * Switches to the fast cadence for a short window, e.g. after opening an external viewer.
+     */
+    public void boost() {
+        boostUntil = SystemClock.elapsedRealtime() + BOOST_WINDOW;
+        reschedule();
+    }
+
+    public void setPaused(boolean paused) {
+        if (this.paused == paused) return;
+        this.paused = paused;
+        Log.d(TAG, paused ? "Watchdog paused" : "Watchdog resumed");
+        reschedule();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public void setScreenOff(boolean screenOff) {
+        if (this.screenOff == screenOff) return;
+        this.screenOff = screenOff;
+        // Coming back on should be checked straight away; going off just slows the next tick
+        if (!screenOff) reschedule();
+    }
+
+    /**
+     * Short human readable summary of the cadence and tick cost.
+     */
+    public String getStatusSummary() {
+        long count = tickCount;
+        long avgMicros = count > 0 ? totalTickNanos / count / 1000 : 0;
+        return "Watchdog " + (paused ? "paused" : "every " + currentInterval + " ms")
+                + " | ticks " + count
+                + " | last " + lastTickNanos / 1000 + " µs"
+                + " | avg " + avgMicros + " µs"
+                + " | max " + maxTickNanos / 1000 + " µs";
+    }
+
+    private void reschedule() {
+        handler.removeCallbacks(loop);
+        if (running && !paused) handler.post(loop);
+    }
+
+    private long nextInterval() {
+        if (SystemClock.elapsedRealtime() < boostUntil) return INTERVAL_BOOST;
+        boolean idle = screenOff || isInLockTaskMode();
+        if (PowerMonitor.isLowPower()) return idle ? INTERVAL_LOW_POWER_IDLE : INTERVAL_LOW_POWER;
+        return idle ? INTERVAL_IDLE : INTERVAL_NORMAL;
+    }
+
+    private boolean isInLockTaskMode() {
+        if (activityManager == null) return false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return activityManager.getLockTaskModeState() != ActivityManager.LOCK_TASK_MODE_NONE;
+        }
+        //noinspection deprecation
+        return activityManager.isInLockTaskMode();
+    }
+
+    private void recordTick(long nanos) {
+        tickCount++;
+        lastTickNanos = nanos;
+        Metrics.histogram(Metrics.WATCHDOG_TICK_US).record(nanos / 1000);
+        totalTickNanos += nanos;
+        if (nanos > maxTickNanos) maxTickNanos = nanos;
+        KioskLog.d(TAG, "Tick took (us)", nanos / 1000);
+    }
+}
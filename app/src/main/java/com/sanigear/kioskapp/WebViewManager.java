@@ -0,0 +1,260 @@
+package com.sanigear.kioskapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.WebChromeClient;
+import android.webkit.WebView;
+
+/**
+ * Owns the single long-lived kiosk WebView.
+ * Saves and restores its state across activity recreation, only reloads on resume when the page
+ * is stale or the network changed underneath it, and counts and times page loads.
+ * If the renderer process dies, the WebView is replaced and the listener reloads it.
+ */
+public class WebViewManager {
+
+    private static final String TAG = "WebViewManager";
+    private static final String STATE_KEY = "kiosk_webview_state";
+    private static final long STALE_AFTER = 15 * 60 * 1000; // Reload after 15 minutes in the background
+
+    private final Context context;
+    private final ConnectivityManager connectivityManager;
+    private final WebChromeClient chromeClient;
+    private final PortalAssetCache assetCache;
+    private final SessionManager session;
+    private Runnable rendererGoneListener;
+    private WebView webView;
+
+    private boolean loaded = false;
+    private boolean paused = false;
+    private boolean reloadOnResume = false;
+    private boolean lowPower = false;
+    private boolean timersPaused = false;
+    private long pausedAt = 0;
+    private Network loadedOnNetwork;
+    private String restoreScrollUrl;
+    private int restoreScrollY;
+
+    // Page load stats, main thread only
+    private long loadStartedAt = 0;
+    private int pageLoads = 0;
+    private long lastLoadMs = 0;
+    private long totalLoadMs = 0;
+
+    public WebViewManager(Context context, WebChromeClient chromeClient, PortalAssetCache assetCache,
+                          SessionManager session) {
+        this.context = context;
+        this.chromeClient = chromeClient;
+        this.assetCache = assetCache;
+        this.session = session;
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    /**
+     * Returns the kiosk WebView, creating and configuring it on first use.
+     */
+    public WebView getWebView() {
+        if (webView != null) return webView;
+
+        webView = new WebView(context);
+        webView.getSettings().setJavaScriptEnabled(true);
+        webView.getSettings().setDomStorageEnabled(true);
+        webView.getSettings().setAllowFileAccess(true);
+        webView.getSettings().setAllowContentAccess(true);
+        webView.getSettings().setJavaScriptCanOpenWindowsAutomatically(true);
+        webView.getSettings().setSupportMultipleWindows(true);
+        webView.setWebChromeClient(chromeClient);
+        webView.setWebViewClient(new TimedWebViewClient());
+        StartupTimer.mark("WebView created");
+        return webView;
+    }
+
+    /**
+     * Called on the main thread after a dead renderer's WebView was thrown away; the next
+     * {@link #getWebView()} returns a fresh one.
+     */
+    public void setRendererGoneListener(Runnable listener) {
+        rendererGoneListener = listener;
+    }
+
+    /**
+     * True once a page has been loaded or restored into the WebView.
+     */
+    public boolean hasContent() {
+        return loaded;
+    }
+
+    /**
+     * Restores the back/forward list saved by {@link #saveState(Bundle)}. Returns false if there was nothing to restore.
+     */
+    public boolean restoreState(Bundle savedInstanceState) {
+        if (webView == null || savedInstanceState == null) return false;
+        Bundle state = savedInstanceState.getBundle(STATE_KEY);
+        if (state == null || webView.restoreState(state) == null) return false;
+        loaded = true;
+        Log.d(TAG, "WebView state restored");
+        return true;
+    }
+
+    public void saveState(Bundle outState) {
+        if (webView == null || !loaded) return;
+        Bundle state = new Bundle();
+        webView.saveState(state);
+        outState.putBundle(STATE_KEY, state);
+    }
+
+    public void load(String url) {
+        if (webView == null) return;
+        loaded = true;
+        webView.loadUrl(url);
+    }
+
+    /**
+     * Loads the URL and scrolls back to where the page was left once it has finished.
+     */
+    public void load(String url, int scrollY) {
+        restoreScrollUrl = scrollY > 0 ? url : null;
+        restoreScrollY = scrollY;
+        load(url);
+    }
+
+    public void reload() {
+        if (webView == null) return;
+        if (loaded) webView.reload();
+    }
+
+    public void onPause() {
+        if (webView == null) return;
+        paused = true;
+        pausedAt = SystemClock.elapsedRealtime();
+        webView.onPause();
+        // Process-wide; stops portal JS timers while the kiosk is in the background
+        if (lowPower) {
+            webView.pauseTimers();
+            timersPaused = true;
+        }
+    }
+
+    /**
+     * Resumes the WebView and reloads only if the page is stale or the network changed.
+     */
+    public void onResume() {
+        if (webView == null) return;
+        paused = false;
+        webView.onResume();
+        if (timersPaused) {
+            webView.resumeTimers();
+            timersPaused = false;
+        }
+        if (!loaded) return;
+
+        if (reloadOnResume) {
+            reloadOnResume = false;
+            Log.d(TAG, "Reloading on resume after a network outage");
+            webView.reload();
+            return;
+        }
+        long pausedFor = pausedAt > 0 ? SystemClock.elapsedRealtime() - pausedAt : 0;
+        boolean stale = pausedFor > STALE_AFTER;
+        boolean networkChanged = loadedOnNetwork != null && !loadedOnNetwork.equals(activeNetwork());
+        if (stale || networkChanged) {
+            Log.d(TAG, "Reloading on resume (stale=" + stale + ", networkChanged=" + networkChanged + ")");
+            webView.reload();
+        }
+    }
+
+    /**
+     * In the low-power profile the WebView's JS timers are paused while the activity is in the background.
+     */
+    public void setLowPower(boolean lowPower) {
+        this.lowPower = lowPower;
+    }
+
+    /**
+     * Reloads the page after the network validated again, or on the next resume if paused.
+     */
+    public void onNetworkRestored() {
+        if (webView == null || !loaded) return;
+        if (paused) {
+            reloadOnResume = true;
+            return;
+        }
+        Log.d(TAG, "Reloading after the network came back");
+        webView.reload();
+    }
+
+    public void destroy() {
+        if (webView == null) return;
+        webView.stopLoading();
+        // Timers are global to the process, don't leave the next WebView frozen
+        if (timersPaused) webView.resumeTimers();
+        timersPaused = false;
+        webView.destroy();
+        webView = null;
+        loaded = false;
+    }
+
+    /**
+     * Page load count and timing, for the About dialog.
+     */
+    public String getStatsSummary() {
+        long avg = pageLoads > 0 ? totalLoadMs / pageLoads : 0;
+        return "Page loads " + pageLoads + " | last " + lastLoadMs + " ms | avg " + avg + " ms";
+    }
+
+    private Network activeNetwork() {
+        return connectivityManager != null ? connectivityManager.getActiveNetwork() : null;
+    }
+
+    private class TimedWebViewClient extends SecureWebViewClient {
+        TimedWebViewClient() {
+            super(assetCache);
+        }
+
+        @Override
+        public void onPageStarted(WebView view, String url, Bitmap favicon) {
+            super.onPageStarted(view, url, favicon);
+            loadStartedAt = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            super.onPageFinished(view, url);
+            loadedOnNetwork = activeNetwork();
+            StartupTimer.onPageFinished(context);
+            session.onPageFinished(url);
+            if (url.equals(restoreScrollUrl)) {
+                view.scrollTo(0, restoreScrollY);
+                restoreScrollUrl = null;
+            }
+            // Redirects can finish more than once per start, only count the first
+            if (loadStartedAt == 0) return;
+            lastLoadMs = SystemClock.elapsedRealtime() - loadStartedAt;
+            loadStartedAt = 0;
+            pageLoads++;
+            totalLoadMs += lastLoadMs;
+            Metrics.histogram(Metrics.PAGE_LOAD_MS).record(lastLoadMs);
+            Log.d(TAG, "Page loaded in " + lastLoadMs + " ms: " + url);
+        }
+
+        @Override
+        public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+            // Without handling this the whole kiosk process is killed along with the renderer
+            Log.w(TAG, "Renderer gone (crashed: " + detail.didCrash() + "), recreating the WebView");
+            Metrics.counter("webview.renderer_gone").increment();
+            SessionManager.flush();
+            if (view != webView) return true; // A WebView already replaced; nothing left to do
+            if (view.getParent() instanceof ViewGroup) ((ViewGroup) view.getParent()).removeView(view);
+            destroy();
+            if (rendererGoneListener != null) rendererGoneListener.run();
+            return true;
+        }
+    }
+}
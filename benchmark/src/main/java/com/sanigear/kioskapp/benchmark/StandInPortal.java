@@ -0,0 +1,82 @@
+package com.sanigear.kioskapp.benchmark;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal HTTP server on the device's loopback standing in for the portal, so startup is measured
+ * without the internet, a portal account or the portal's own response times. The benchmark build
+ * type of the app points PORTAL_ORIGIN here. Every page is the same static login form.
+ */
+final class StandInPortal implements Closeable {
+
+    static final int PORT = 8765; // Matches PORTAL_ORIGIN of the benchmark build type
+
+    private static final byte[] LOGIN_PAGE = ("<!DOCTYPE html><html><head>"
+            + "<meta name=\"viewport\" content=\"width=device-width\"><title>Sanigear</title></head><body>"
+            + "<h1>Sanigear Automation</h1><form method=\"post\" action=\"/a/login\">"
+            + "<p><label>User <input name=\"user\"></label></p>"
+            + "<p><label>Password <input name=\"password\" type=\"password\"></label></p>"
+            + "<button type=\"submit\">Sign in</button></form></body></html>").getBytes(StandardCharsets.UTF_8);
+
+    private final ServerSocket server;
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+
+    StandInPortal() throws IOException {
+        server = new ServerSocket(PORT, 50, InetAddress.getLoopbackAddress());
+        workers.execute(this::acceptLoop);
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                workers.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return; // Closed
+            }
+        }
+    }
+
+    // One request per connection; headers and request bodies are ignored
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            s.setSoTimeout(5000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+            String request = in.readLine();
+            if (request == null) return;
+            String line;
+            while ((line = in.readLine()) != null && !line.isEmpty()) {
+                // Skip the headers
+            }
+            boolean head = request.startsWith("HEAD ");
+            boolean page = !request.contains("favicon");
+            String header = "HTTP/1.1 " + (page ? "200 OK" : "404 Not Found") + "\r\n"
+                    + "Content-Type: text/html; charset=utf-8\r\n"
+                    + "Content-Length: " + (page ? LOGIN_PAGE.length : 0) + "\r\n"
+                    + "Cache-Control: no-store\r\n"
+                    + "Connection: close\r\n\r\n";
+            OutputStream out = s.getOutputStream();
+            out.write(header.getBytes(StandardCharsets.US_ASCII));
+            if (page && !head) out.write(LOGIN_PAGE);
+            out.flush();
+        } catch (IOException ignored) {
+            // The app gave up on the request, nothing to answer
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,105 @@
+package com.sanigear.kioskapp.benchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.Until;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import kotlin.Unit;
+
+/**
+ * Cold start, warm start and resume of the kiosk against {@link StandInPortal}. Cold and warm run
+ * up to the first portal page, which is when the app calls reportFullyDrawn(). Resume brings the
+ * stopped kiosk back to the front, the same onRestart/onResume path as returning from the external
+ * PDF app. checkStartupBudgets compares the results with the startup budgets.
+ * <p>
+ * The device needs a network connection for the app's connectivity check, but all portal traffic
+ * stays on loopback.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final String PACKAGE = "com.sanigear.kioskapp";
+    private static final int ITERATIONS = 5;
+    private static final long PAGE_TIMEOUT = 30 * 1000;
+
+    private static StandInPortal portal;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @BeforeClass
+    public static void startPortal() throws IOException {
+        portal = new StandInPortal();
+        // Without usage access the kiosk opens its settings screen on every start
+        UiDevice.getInstance(InstrumentationRegistry.getInstrumentation())
+                .executeShellCommand("appops set " + PACKAGE + " GET_USAGE_STATS allow");
+    }
+
+    @AfterClass
+    public static void stopPortal() throws IOException {
+        if (portal != null) portal.close();
+    }
+
+    @Test
+    public void startupCold() {
+        measure(StartupMode.COLD);
+    }
+
+    @Test
+    public void startupWarm() {
+        measure(StartupMode.WARM);
+    }
+
+    @Test
+    public void startupResume() {
+        benchmarkRule.measureRepeated(PACKAGE, Collections.singletonList(new StartupTimingMetric()),
+                new CompilationMode.Partial(), StartupMode.HOT, ITERATIONS,
+                scope -> {
+                    // The kiosk showing the portal, then put in the background like for the PDF app
+                    scope.startActivityAndWait();
+                    waitForPortal(scope);
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    scope.startActivityAndWait();
+                    return Unit.INSTANCE;
+                });
+    }
+
+    private void measure(StartupMode mode) {
+        benchmarkRule.measureRepeated(PACKAGE, Collections.singletonList(new StartupTimingMetric()),
+                new CompilationMode.Partial(), mode, ITERATIONS,
+                scope -> {
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    scope.startActivityAndWait();
+                    waitForPortal(scope);
+                    return Unit.INSTANCE;
+                });
+    }
+
+    // The WebView exposes the page's nodes once the first page is drawn
+    private static void waitForPortal(MacrobenchmarkScope scope) {
+        scope.getDevice().wait(Until.hasObject(By.pkg(PACKAGE).clazz("android.webkit.WebView")
+                .hasDescendant(By.enabled(true))), PAGE_TIMEOUT);
+    }
+}
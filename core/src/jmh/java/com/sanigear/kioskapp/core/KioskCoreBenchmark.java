@@ -0,0 +1,131 @@
+package com.sanigear.kioskapp.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-call cost of the logic that runs on every watchdog tick and every WebView navigation.
+ * Run with {@code ./gradlew :core:jmh}; the gc profiler reports allocation per call.
+ */
+@State(Scope.Thread)
+public class KioskCoreBenchmark {
+
+    // Whitelist size, to show lookups don't grow with the number of allowed packages
+    @Param({"7", "100", "1000"})
+    public int allowedCount;
+
+    private PackagePolicy policy;
+    private String allowedPackage;
+    private String deniedPackage;
+    private String[] rotatingPackages;
+    private int next;
+
+    private ForegroundEventReducer reducer;
+    private ArrayCursor cursor;
+
+    private UrlPolicy urlPolicy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] allowed = new String[allowedCount];
+        allowed[0] = PackagePolicy.KIOSK_PACKAGE;
+        for (int i = 1; i < allowedCount; i++) {
+            allowed[i] = "com.vendor" + i + ".app";
+        }
+        policy = new PackagePolicy(allowed);
+        allowedPackage = "com.sanigear.kioskapp.debug";
+        deniedPackage = "com.android.chrome";
+
+        // More distinct names than cache slots, so most lookups walk the trie
+        rotatingPackages = new String[256];
+        for (int i = 0; i < rotatingPackages.length; i++) {
+            rotatingPackages[i] = "com.example.tablet.app" + i;
+        }
+
+        reducer = new ForegroundEventReducer(10000);
+        cursor = new ArrayCursor(8);
+        urlPolicy = new UrlPolicy("automation.sanigear.app");
+    }
+
+    @Benchmark
+    public boolean whitelistCachedHit() {
+        return policy.isAllowed(allowedPackage);
+    }
+
+    @Benchmark
+    public boolean whitelistCachedMiss() {
+        return policy.isAllowed(deniedPackage);
+    }
+
+    @Benchmark
+    public boolean whitelistUncached() {
+        String name = rotatingPackages[next++ & (rotatingPackages.length - 1)];
+        return policy.isAllowed(name);
+    }
+
+    @Benchmark
+    public String foregroundTick() {
+        cursor.rewind();
+        return reducer.consume(cursor);
+    }
+
+    @Benchmark
+    public boolean versionCompare() {
+        return Versions.isNewer(Versions.fromTag("SanigearKiosk_v3.4"), "3.3");
+    }
+
+    @Benchmark
+    public boolean navigationCheck() {
+        return urlPolicy.shouldBlockNavigation(
+                "https://automation.sanigear.app/a/workorders/42", "automation.sanigear.app");
+    }
+
+    // Replays a fixed batch of events, like one watchdog tick's worth of UsageEvents
+    private static class ArrayCursor implements EventCursor {
+        private final long[] timeStamps;
+        private final int[] types;
+        private final String[] packages;
+        private int position = -1;
+        private long base = 1;
+
+        ArrayCursor(int size) {
+            timeStamps = new long[size];
+            types = new int[size];
+            packages = new String[size];
+            for (int i = 0; i < size; i++) {
+                types[i] = i % 2 == 0 ? ForegroundEventReducer.MOVE_TO_FOREGROUND : 2;
+                packages[i] = i % 4 == 0 ? PackagePolicy.KIOSK_PACKAGE : "com.adobe.reader";
+            }
+        }
+
+        void rewind() {
+            position = -1;
+            base += timeStamps.length;
+            for (int i = 0; i < timeStamps.length; i++) timeStamps[i] = base + i;
+        }
+
+        @Override
+        public boolean next() {
+            return ++position < timeStamps.length;
+        }
+
+        @Override
+        public long timeStamp() {
+            return timeStamps[position];
+        }
+
+        @Override
+        public int eventType() {
+            return types[position];
+        }
+
+        @Override
+        public String packageName() {
+            return packages[position];
+        }
+    }
+}
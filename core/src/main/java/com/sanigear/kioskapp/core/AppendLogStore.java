@@ -0,0 +1,280 @@
+package com.sanigear.kioskapp.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Small key-value store kept in memory and persisted as an append-only log in a memory-mapped file.
+ * Reads are map lookups. Writes update the map and mark the key dirty; a background thread
+ * appends the latest value of every dirty key a moment later, so a burst of writes to one key
+ * costs one record. There is no fsync: the records are in the page cache as soon as they are
+ * copied into the mapping, so they survive the process being killed. When the log fills up it
+ * is rewritten with only the live values.
+ * <p>
+ * Values are String, Long, Integer (stored as Long) or Boolean. Each record carries a CRC, and
+ * loading stops at the first damaged record, so a torn write loses only the newest values.
+ */
+public final class AppendLogStore implements Closeable {
+
+    private static final int MAGIC = 0x4b535452; // "KSTR"
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;        // magic, version, end of log, spare
+    private static final int MIN_CAPACITY = 64 * 1024;
+    private static final long FLUSH_DELAY = 250; // Milliseconds writes are coalesced for
+
+    private static final byte T_DELETE = 0;
+    private static final byte T_STRING = 1;
+    private static final byte T_LONG = 2;
+    private static final byte T_BOOLEAN = 3;
+
+    private final File file;
+    private final Map<String, Object> values = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "KioskStoreWriter");
+        t.setDaemon(true);
+        return t;
+    });
+    private final CRC32 crc = new CRC32(); // Guarded by this
+
+    private MappedByteBuffer buffer; // Guarded by this
+    private int end;
+
+    private AppendLogStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the store, replaying the log into memory; creates the file if there is none.
+     */
+    public static AppendLogStore open(File file) throws IOException {
+        AppendLogStore store = new AppendLogStore(file);
+        synchronized (store) {
+            store.load();
+        }
+        return store;
+    }
+
+    public Object get(String key) {
+        return values.get(key);
+    }
+
+    public boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    /**
+     * Sets a value, or removes the key when value is null. Cheap enough for the main thread;
+     * the write reaches the file shortly after on the writer thread.
+     */
+    public void put(String key, Object value) {
+        if (value instanceof Integer) value = ((Integer) value).longValue();
+        if (value != null && !(value instanceof String || value instanceof Long || value instanceof Boolean)) {
+            throw new IllegalArgumentException("Unsupported value type " + value.getClass().getSimpleName());
+        }
+        Object previous = value != null ? values.put(key, value) : values.remove(key);
+        if (value == null ? previous == null : value.equals(previous)) return; // Unchanged, nothing to write
+        dirty.add(key);
+        if (flushScheduled.compareAndSet(false, true)) {
+            writer.schedule(this::flushQuietly, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes pending values now, on the calling thread.
+     */
+    public synchronized void flush() throws IOException {
+        flushScheduled.set(false);
+        if (dirty.isEmpty()) return;
+        List<String> keys = new ArrayList<>(dirty);
+        for (String key : keys) {
+            dirty.remove(key);
+            byte[] record = encode(key, values.get(key));
+            if (end + record.length <= buffer.capacity()) {
+                append(record);
+                continue;
+            }
+            try {
+                compact(record.length); // The rewrite contains the current value
+            } catch (IOException e) {
+                dirty.add(key); // Written with the next flush
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Size of the log in bytes, for diagnostics.
+     */
+    public synchronized int getLogSize() {
+        return end;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        flush();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            // Values stay in memory and the key that failed is retried with the next write
+        }
+    }
+
+    // Caller holds the lock
+    private void load() throws IOException {
+        int capacity = (int) Math.max(MIN_CAPACITY, file.length());
+        buffer = map(file, capacity);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            initHeader(buffer);
+        }
+        int logEnd = Math.max(HEADER, Math.min(buffer.getInt(8), capacity));
+        byte[] log = new byte[logEnd];
+        buffer.duplicate().get(log); // One bulk copy instead of reading through the mapping
+        end = HEADER;
+        while (end < logEnd) {
+            int next = replay(log, end);
+            if (next < 0) break; // Damaged from here on; later appends overwrite it
+            end = next;
+        }
+        buffer.putInt(8, end);
+    }
+
+    // Applies the record at pos, returning the position after it or -1 if it is damaged
+    private int replay(byte[] log, int pos) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(log);
+            int length = in.getInt(pos);
+            if (length < 11 || length > log.length - pos) return -1;
+            crc.reset();
+            crc.update(log, pos + 4, length - 8);
+            if ((int) crc.getValue() != in.getInt(pos + length - 4)) return -1;
+
+            ByteBuffer body = ByteBuffer.wrap(log, pos + 4, length - 8);
+            byte type = body.get();
+            byte[] keyBytes = new byte[body.getShort() & 0xffff];
+            body.get(keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            switch (type) {
+                case T_DELETE: values.remove(key); break;
+                case T_STRING:
+                    byte[] text = new byte[body.remaining()];
+                    body.get(text);
+                    values.put(key, new String(text, StandardCharsets.UTF_8));
+                    break;
+                case T_LONG: values.put(key, body.getLong()); break;
+                case T_BOOLEAN: values.put(key, body.get() != 0); break;
+                default: return -1;
+            }
+            return pos + length;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    // Record: length (4), type (1), key length (2), key, value, CRC of type..value (4)
+    private byte[] encode(String key, Object value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes;
+        byte type;
+        if (value == null) {
+            type = T_DELETE;
+            valueBytes = new byte[0];
+        } else if (value instanceof String) {
+            type = T_STRING;
+            valueBytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+        } else if (value instanceof Long) {
+            type = T_LONG;
+            valueBytes = ByteBuffer.allocate(8).putLong((Long) value).array();
+        } else {
+            type = T_BOOLEAN;
+            valueBytes = new byte[]{(byte) ((Boolean) value ? 1 : 0)};
+        }
+        int length = 4 + 1 + 2 + keyBytes.length + valueBytes.length + 4;
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(length).put(type).putShort((short) keyBytes.length).put(keyBytes).put(valueBytes);
+        crc.reset();
+        crc.update(record.array(), 4, length - 8);
+        record.putInt((int) crc.getValue());
+        return record.array();
+    }
+
+    // Caller holds the lock
+    private void append(byte[] record) {
+        put(buffer, end, record);
+        end += record.length;
+        buffer.putInt(8, end); // Only after the record is complete
+    }
+
+    // Rewrites the live values into a fresh file, growing it if they take more than half of it
+    private void compact(int extra) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        int live = HEADER;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            byte[] record = encode(entry.getKey(), entry.getValue());
+            records.add(record);
+            live += record.length;
+        }
+        int capacity = buffer.capacity();
+        while (live + extra > capacity / 2) capacity *= 2;
+
+        File temp = new File(file.getPath() + ".tmp");
+        temp.delete();
+        MappedByteBuffer fresh = map(temp, capacity);
+        initHeader(fresh);
+        int pos = HEADER;
+        for (byte[] record : records) {
+            put(fresh, pos, record);
+            pos += record.length;
+        }
+        fresh.putInt(8, pos);
+        fresh.force(); // The old log is about to be replaced, so this one has to be on disk
+        if (!temp.renameTo(file)) throw new IOException("Could not replace " + file);
+        buffer = fresh;
+        end = pos;
+    }
+
+    // Absolute writes, so the shared buffer's position never matters
+    private static void put(MappedByteBuffer buffer, int pos, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) buffer.put(pos + i, bytes[i]);
+    }
+
+    private static void initHeader(MappedByteBuffer buffer) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, HEADER);
+    }
+
+    private static MappedByteBuffer map(File file, int capacity) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // The mapping stays valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.sanigear.kioskapp.core;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which portal assets the offline cache may keep and for how long, from the response's
+ * Cache-Control and the URL. Only assets that can't change under the same URL are kept: marked
+ * immutable, given a long max-age, or fingerprinted (a content hash in the file name or a version
+ * query). Anything else, e.g. an unversioned app.js, is left to the WebView's own HTTP cache so a
+ * portal deploy is picked up right away.
+ */
+public final class AssetCachePolicy {
+
+    public static final long LONG_MAX_AGE = 7 * 24 * 60 * 60;          // Seconds
+    static final long FINGERPRINTED_FRESH_FOR = 24 * 60 * 60 * 1000L;  // Revalidated daily all the same
+
+    // "app.3f9a2c1b.js", "main-5d41402abc4b.css", "chunk.a1b2c3d4e5.woff2"
+    private static final Pattern HASHED_NAME = Pattern.compile(".*[.\\-_][0-9a-fA-F]{8,}\\.[A-Za-z0-9]+$");
+    private static final Pattern VERSION_QUERY = Pattern.compile("(^|&)(v|ver|version|hash|rev)=[^&]+");
+
+    private final boolean noStore;
+    private final boolean noCache;
+    private final boolean immutable;
+    private final long maxAge; // Seconds, -1 if absent
+    private final boolean fingerprinted;
+
+    private AssetCachePolicy(boolean noStore, boolean noCache, boolean immutable, long maxAge, boolean fingerprinted) {
+        this.noStore = noStore;
+        this.noCache = noCache;
+        this.immutable = immutable;
+        this.maxAge = maxAge;
+        this.fingerprinted = fingerprinted;
+    }
+
+    /**
+     * @param cacheControl the Cache-Control response header, may be null
+     * @param path         the URL path
+     * @param query        the URL query without '?', may be null
+     */
+    public static AssetCachePolicy of(String cacheControl, String path, String query) {
+        boolean noStore = false;
+        boolean noCache = false;
+        boolean immutable = false;
+        long maxAge = -1;
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+                String d = directive.trim();
+                if (d.equals("no-store")) noStore = true;
+                else if (d.equals("no-cache") || d.startsWith("no-cache=")) noCache = true;
+                else if (d.equals("immutable")) immutable = true;
+                else if (d.startsWith("max-age=")) maxAge = parseSeconds(d.substring("max-age=".length()));
+            }
+        }
+        boolean fingerprinted = (path != null && HASHED_NAME.matcher(path).matches())
+                || (query != null && VERSION_QUERY.matcher(query.toLowerCase(Locale.US)).find());
+        return new AssetCachePolicy(noStore, noCache, immutable, maxAge, fingerprinted);
+    }
+
+    /**
+     * True if the response may be stored and served from disk.
+     */
+    public boolean isCacheable() {
+        if (noStore || noCache || maxAge == 0) return false;
+        return immutable || maxAge >= LONG_MAX_AGE || fingerprinted;
+    }
+
+    /**
+     * How long a stored copy may be served without asking the server, in milliseconds.
+     */
+    public long freshForMillis() {
+        if (immutable) return Long.MAX_VALUE;
+        if (maxAge > 0) return maxAge * 1000;
+        return FINGERPRINTED_FRESH_FOR;
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.replace("\"", "").trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.sanigear.kioskapp.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Makes the delta patches {@link DeltaPatcher} applies: Colin Percival's bsdiff 4.3 algorithm
+ * (suffix array of the old file, approximate matches extended forwards and backwards) written in
+ * the zlib variant of the format. Runs on the release machine, see {@link DeltaTool}; both files
+ * are held in memory along with two int arrays the size of the old file.
+ */
+public final class DeltaDiff {
+
+    private DeltaDiff() {}
+
+    public static void diff(File oldFile, File newFile, File patchFile) throws IOException {
+        byte[] patch = diff(readAll(oldFile), readAll(newFile));
+        try (OutputStream out = new FileOutputStream(patchFile)) {
+            out.write(patch);
+        }
+    }
+
+    public static byte[] diff(byte[] old, byte[] neu) throws IOException {
+        int oldSize = old.length;
+        int newSize = neu.length;
+        int[] index = new int[oldSize + 1];
+        qsufsort(index, new int[oldSize + 1], old);
+
+        ByteArrayOutputStream control = new ByteArrayOutputStream();
+        ByteArrayOutputStream diff = new ByteArrayOutputStream();
+        ByteArrayOutputStream extra = new ByteArrayOutputStream();
+        byte[] triple = new byte[24];
+
+        int scan = 0;
+        int len = 0;
+        int pos = 0;
+        int lastScan = 0;
+        int lastPos = 0;
+        int lastOffset = 0;
+        int[] found = new int[1];
+        while (scan < newSize) {
+            int oldScore = 0;
+            int scsc = scan += len;
+            for (; scan < newSize; scan++) {
+                len = search(index, old, neu, scan, 0, oldSize, found);
+                pos = found[0];
+                for (; scsc < scan + len; scsc++) {
+                    if (scsc + lastOffset < oldSize && old[scsc + lastOffset] == neu[scsc]) oldScore++;
+                }
+                if ((len == oldScore && len != 0) || len > oldScore + 8) break;
+                if (scan + lastOffset < oldSize && old[scan + lastOffset] == neu[scan]) oldScore--;
+            }
+
+            if (len != oldScore || scan == newSize) {
+                // Extend the previous match forwards and this one backwards as far as they pay off
+                int s = 0;
+                int best = 0;
+                int lenF = 0;
+                for (int i = 0; lastScan + i < scan && lastPos + i < oldSize; ) {
+                    if (old[lastPos + i] == neu[lastScan + i]) s++;
+                    i++;
+                    if (s * 2 - i > best * 2 - lenF) {
+                        best = s;
+                        lenF = i;
+                    }
+                }
+
+                int lenB = 0;
+                if (scan < newSize) {
+                    s = 0;
+                    best = 0;
+                    for (int i = 1; scan >= lastScan + i && pos >= i; i++) {
+                        if (old[pos - i] == neu[scan - i]) s++;
+                        if (s * 2 - i > best * 2 - lenB) {
+                            best = s;
+                            lenB = i;
+                        }
+                    }
+                }
+
+                if (lastScan + lenF > scan - lenB) {
+                    int overlap = (lastScan + lenF) - (scan - lenB);
+                    s = 0;
+                    best = 0;
+                    int lenS = 0;
+                    for (int i = 0; i < overlap; i++) {
+                        if (neu[lastScan + lenF - overlap + i] == old[lastPos + lenF - overlap + i]) s++;
+                        if (neu[scan - lenB + i] == old[pos - lenB + i]) s--;
+                        if (s > best) {
+                            best = s;
+                            lenS = i + 1;
+                        }
+                    }
+                    lenF += lenS - overlap;
+                    lenB -= lenS;
+                }
+
+                for (int i = 0; i < lenF; i++) diff.write(neu[lastScan + i] - old[lastPos + i]);
+                int extraLength = (scan - lenB) - (lastScan + lenF);
+                extra.write(neu, lastScan + lenF, extraLength);
+
+                writeOffset(triple, 0, lenF);
+                writeOffset(triple, 8, extraLength);
+                writeOffset(triple, 16, (pos - lenB) - (lastPos + lenF));
+                control.write(triple);
+
+                lastScan = scan - lenB;
+                lastPos = pos - lenB;
+                lastOffset = pos - scan;
+            }
+        }
+
+        byte[] controlBlock = deflate(control.toByteArray());
+        byte[] diffBlock = deflate(diff.toByteArray());
+        byte[] extraBlock = deflate(extra.toByteArray());
+        ByteArrayOutputStream patch = new ByteArrayOutputStream(32 + controlBlock.length + diffBlock.length + extraBlock.length);
+        byte[] header = new byte[32];
+        System.arraycopy("SGDIFF01".getBytes(StandardCharsets.US_ASCII), 0, header, 0, 8);
+        writeOffset(header, 8, controlBlock.length);
+        writeOffset(header, 16, diffBlock.length);
+        writeOffset(header, 24, newSize);
+        patch.write(header);
+        patch.write(controlBlock);
+        patch.write(diffBlock);
+        patch.write(extraBlock);
+        return patch.toByteArray();
+    }
+
+    private static byte[] readAll(File file) throws IOException {
+        if (file.length() > Integer.MAX_VALUE) throw new IOException("File too large: " + file);
+        byte[] data = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(data);
+        }
+        return data;
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION))) {
+            deflater.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    // Inverse of DeltaPatcher.readOffset
+    static void writeOffset(byte[] buf, int pos, long value) {
+        long magnitude = Math.abs(value);
+        for (int i = 0; i < 8; i++) {
+            buf[pos + i] = (byte) (magnitude >>> (8 * i));
+        }
+        if (value < 0) buf[pos + 7] |= (byte) 0x80;
+    }
+
+    // Larsson-Sadakane suffix sorting, as in bsdiff; bytes compare unsigned
+    private static void qsufsort(int[] index, int[] v, byte[] old) {
+        int size = old.length;
+        int[] buckets = new int[256];
+        for (byte b : old) buckets[b & 0xff]++;
+        for (int i = 1; i < 256; i++) buckets[i] += buckets[i - 1];
+        for (int i = 255; i > 0; i--) buckets[i] = buckets[i - 1];
+        buckets[0] = 0;
+
+        for (int i = 0; i < size; i++) index[++buckets[old[i] & 0xff]] = i;
+        index[0] = size;
+        for (int i = 0; i < size; i++) v[i] = buckets[old[i] & 0xff];
+        v[size] = 0;
+        for (int i = 1; i < 256; i++) {
+            if (buckets[i] == buckets[i - 1] + 1) index[buckets[i]] = -1;
+        }
+        index[0] = -1;
+
+        for (int h = 1; index[0] != -(size + 1); h += h) {
+            int len = 0;
+            int i = 0;
+            while (i < size + 1) {
+                if (index[i] < 0) {
+                    len -= index[i];
+                    i -= index[i];
+                } else {
+                    if (len != 0) index[i - len] = -len;
+                    len = v[index[i]] + 1 - i;
+                    split(index, v, i, len, h);
+                    i += len;
+                    len = 0;
+                }
+            }
+            if (len != 0) index[i - len] = -len;
+        }
+        for (int i = 0; i < size + 1; i++) index[v[i]] = i;
+    }
+
+    private static void split(int[] index, int[] v, int start, int len, int h) {
+        if (len < 16) {
+            for (int k = start, j; k < start + len; k += j) {
+                j = 1;
+                int x = v[index[k] + h];
+                for (int i = 1; k + i < start + len; i++) {
+                    if (v[index[k + i] + h] < x) {
+                        x = v[index[k + i] + h];
+                        j = 0;
+                    }
+                    if (v[index[k + i] + h] == x) {
+                        swap(index, k + j, k + i);
+                        j++;
+                    }
+                }
+                for (int i = 0; i < j; i++) v[index[k + i]] = k + j - 1;
+                if (j == 1) index[k] = -1;
+            }
+            return;
+        }
+
+        int x = v[index[start + len / 2] + h];
+        int jj = 0;
+        int kk = 0;
+        for (int i = start; i < start + len; i++) {
+            if (v[index[i] + h] < x) jj++;
+            if (v[index[i] + h] == x) kk++;
+        }
+        jj += start;
+        kk += jj;
+
+        int i = start;
+        int j = 0;
+        int k = 0;
+        while (i < jj) {
+            if (v[index[i] + h] < x) {
+                i++;
+            } else if (v[index[i] + h] == x) {
+                swap(index, i, jj + j);
+                j++;
+            } else {
+                swap(index, i, kk + k);
+                k++;
+            }
+        }
+        while (jj + j < kk) {
+            if (v[index[jj + j] + h] == x) {
+                j++;
+            } else {
+                swap(index, jj + j, kk + k);
+                k++;
+            }
+        }
+
+        if (jj > start) split(index, v, start, jj - start, h);
+        for (i = 0; i < kk - jj; i++) v[index[jj + i]] = kk - 1;
+        if (jj == kk - 1) index[jj] = -1;
+        if (start + len > kk) split(index, v, kk, start + len - kk, h);
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int tmp = a[i];
+        a[i] = a[j];
+        a[j] = tmp;
+    }
+
+    // Longest match of neu[from..] in old, by binary search over the suffix array
+    private static int search(int[] index, byte[] old, byte[] neu, int from, int start, int end, int[] pos) {
+        while (end - start >= 2) {
+            int mid = start + (end - start) / 2;
+            if (compare(old, index[mid], neu, from) < 0) {
+                start = mid;
+            } else {
+                end = mid;
+            }
+        }
+        int x = matchLength(old, index[start], neu, from);
+        int y = matchLength(old, index[end], neu, from);
+        if (x > y) {
+            pos[0] = index[start];
+            return x;
+        }
+        pos[0] = index[end];
+        return y;
+    }
+
+    private static int matchLength(byte[] old, int oldFrom, byte[] neu, int newFrom) {
+        int i = 0;
+        while (oldFrom + i < old.length && newFrom + i < neu.length && old[oldFrom + i] == neu[newFrom + i]) i++;
+        return i;
+    }
+
+    // memcmp over the shorter of the two tails
+    private static int compare(byte[] old, int oldFrom, byte[] neu, int newFrom) {
+        int n = Math.min(old.length - oldFrom, neu.length - newFrom);
+        for (int i = 0; i < n; i++) {
+            int a = old[oldFrom + i] & 0xff;
+            int b = neu[newFrom + i] & 0xff;
+            if (a != b) return a - b;
+        }
+        return 0;
+    }
+}
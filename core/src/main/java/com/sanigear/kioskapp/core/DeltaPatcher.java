@@ -0,0 +1,178 @@
+package com.sanigear.kioskapp.core;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Applies binary patches produced for delta app updates.
+ * The format is bsdiff's (control triples plus diff and extra blocks) with each block compressed
+ * with zlib instead of bzip2, which isn't available on Android:
+ * <pre>
+ *   "SGDIFF01"            8 bytes magic
+ *   controlLength         8 bytes, bsdiff offset encoding
+ *   diffLength            8 bytes, bsdiff offset encoding
+ *   newSize               8 bytes, bsdiff offset encoding
+ *   control block         zlib, controlLength bytes
+ *   diff block            zlib, diffLength bytes
+ *   extra block           zlib, rest of the file
+ * </pre>
+ * Patches are made by {@link DeltaDiff}. The old file is read through as the patch asks for it,
+ * never loaded whole.
+ */
+public final class DeltaPatcher {
+
+    private static final byte[] MAGIC = "SGDIFF01".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 32;
+
+    private DeltaPatcher() {}
+
+    /**
+     * Rebuilds the new file from the old file and the patch.
+     *
+     * @throws IOException if the patch is malformed or doesn't fit the old file
+     */
+    public static void apply(File oldFile, File patchFile, File newFile) throws IOException {
+        long controlLength;
+        long diffLength;
+        long newSize;
+        try (RandomAccessFile header = new RandomAccessFile(patchFile, "r")) {
+            byte[] buf = new byte[HEADER_SIZE];
+            header.readFully(buf);
+            if (!Arrays.equals(Arrays.copyOf(buf, MAGIC.length), MAGIC))
+                throw new IOException("Not a delta patch");
+            controlLength = readOffset(buf, 8);
+            diffLength = readOffset(buf, 16);
+            newSize = readOffset(buf, 24);
+        }
+        if (controlLength < 0 || diffLength < 0 || newSize < 0
+                || HEADER_SIZE + controlLength + diffLength > patchFile.length())
+            throw new IOException("Corrupt patch header");
+
+        try (RandomAccessFile old = new RandomAccessFile(oldFile, "r");
+             InputStream control = block(patchFile, HEADER_SIZE, controlLength);
+             InputStream diff = block(patchFile, HEADER_SIZE + controlLength, diffLength);
+             InputStream extra = block(patchFile, HEADER_SIZE + controlLength + diffLength, -1);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(newFile))) {
+
+            byte[] triple = new byte[24];
+            byte[] buf = new byte[16 * 1024];
+            byte[] oldBuf = new byte[buf.length];
+            long oldSize = old.length();
+            long newPos = 0;
+            long oldPos = 0;
+            while (newPos < newSize) {
+                readFully(control, triple, 24);
+                long addLength = readOffset(triple, 0);
+                long copyLength = readOffset(triple, 8);
+                long seek = readOffset(triple, 16);
+                if (addLength < 0 || copyLength < 0 || newPos + addLength + copyLength > newSize)
+                    throw new IOException("Corrupt patch control data");
+
+                // Diff bytes are added to the old bytes at the same position
+                long remaining = addLength;
+                while (remaining > 0) {
+                    int len = (int) Math.min(buf.length, remaining);
+                    readFully(diff, buf, len);
+                    // Only the part of the range that lies inside the old file contributes
+                    long from = Math.max(oldPos, 0);
+                    long to = Math.min(oldPos + len, oldSize);
+                    if (from < to) {
+                        old.seek(from);
+                        old.readFully(oldBuf, 0, (int) (to - from));
+                        int offset = (int) (from - oldPos);
+                        for (int i = 0; i < to - from; i++) buf[offset + i] += oldBuf[i];
+                    }
+                    out.write(buf, 0, len);
+                    oldPos += len;
+                    remaining -= len;
+                }
+                newPos += addLength;
+
+                // Extra bytes are copied as is
+                remaining = copyLength;
+                while (remaining > 0) {
+                    int len = (int) Math.min(buf.length, remaining);
+                    readFully(extra, buf, len);
+                    out.write(buf, 0, len);
+                    remaining -= len;
+                }
+                newPos += copyLength;
+                oldPos += seek;
+            }
+        } catch (IOException e) {
+            newFile.delete();
+            throw e;
+        }
+    }
+
+    private static InputStream block(File patchFile, long offset, long length) throws IOException {
+        FileInputStream in = new FileInputStream(patchFile);
+        try {
+            if (in.skip(offset) != offset) throw new EOFException("Patch truncated");
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        InputStream bounded = length < 0 ? in : new BoundedInputStream(in, length);
+        return new InflaterInputStream(bounded);
+    }
+
+    private static void readFully(InputStream in, byte[] buf, int len) throws IOException {
+        int read = 0;
+        while (read < len) {
+            int n = in.read(buf, read, len - read);
+            if (n < 0) throw new EOFException("Patch truncated");
+            read += n;
+        }
+    }
+
+    // bsdiff stores offsets as 8-byte little-endian magnitude with the sign in the top bit
+    private static long readOffset(byte[] buf, int pos) {
+        long value = buf[pos + 7] & 0x7F;
+        for (int i = 6; i >= 0; i--) {
+            value = (value << 8) | (buf[pos + i] & 0xFF);
+        }
+        return (buf[pos + 7] & 0x80) != 0 ? -value : value;
+    }
+
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            this.in = in;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.sanigear.kioskapp.core;
+
+import java.io.File;
+
+/**
+ * Command-line patch maker for releases, publishing SanigearKiosk_&lt;from&gt;_to_&lt;to&gt;.patch
+ * next to the full APK:
+ * <pre>
+ *   java -cp core.jar com.sanigear.kioskapp.core.DeltaTool diff old.apk new.apk out.patch
+ *   java -cp core.jar com.sanigear.kioskapp.core.DeltaTool patch old.apk in.patch out.apk
+ * </pre>
+ * "diff" checks its own output by applying it and comparing SHA-256 digests.
+ */
+public final class DeltaTool {
+
+    private DeltaTool() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 4 || !("diff".equals(args[0]) || "patch".equals(args[0]))) {
+            System.err.println("Usage: DeltaTool diff <old> <new> <patch> | patch <old> <patch> <new>");
+            System.exit(2);
+        }
+        File old = new File(args[1]);
+        if ("patch".equals(args[0])) {
+            DeltaPatcher.apply(old, new File(args[2]), new File(args[3]));
+            System.out.println("Wrote " + args[3] + " sha256 " + Hashes.sha256Hex(new File(args[3])));
+            return;
+        }
+
+        File neu = new File(args[2]);
+        File patch = new File(args[3]);
+        // Suffix sorting recurses deeply on repetitive input; give it a large stack
+        Throwable[] failure = new Throwable[1];
+        Thread worker = new Thread(null, () -> {
+            try {
+                DeltaDiff.diff(old, neu, patch);
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        }, "diff", 512L * 1024 * 1024);
+        long start = System.nanoTime();
+        worker.start();
+        worker.join();
+        if (failure[0] != null) throw new IllegalStateException("Diff failed", failure[0]);
+
+        File check = File.createTempFile("delta-check", ".apk");
+        try {
+            DeltaPatcher.apply(old, patch, check);
+            String expected = Hashes.sha256Hex(neu);
+            if (!expected.equals(Hashes.sha256Hex(check))) {
+                throw new IllegalStateException("Patch does not reproduce " + neu);
+            }
+            System.out.println("Wrote " + patch.length() + " bytes (" + neu.length() + " full) in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms, sha256 " + expected);
+        } finally {
+            check.delete();
+        }
+    }
+}
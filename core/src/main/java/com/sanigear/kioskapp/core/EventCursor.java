@@ -0,0 +1,19 @@
+package com.sanigear.kioskapp.core;
+
+/**
+ * Forward-only view over usage events, so the reduction logic doesn't depend on
+ * android.app.usage. Implementations reuse one event object between calls.
+ */
+public interface EventCursor {
+
+    /**
+     * Moves to the next event; returns false when there are no more.
+     */
+    boolean next();
+
+    long timeStamp();
+
+    int eventType();
+
+    String packageName();
+}
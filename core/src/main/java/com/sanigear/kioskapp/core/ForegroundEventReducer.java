@@ -0,0 +1,49 @@
+package com.sanigear.kioskapp.core;
+
+/**
+ * Reduces usage events to the current foreground package.
+ * Keeps a high-water-mark timestamp so callers only query events newer than the last one seen.
+ */
+public class ForegroundEventReducer {
+
+    // Same value as android.app.usage.UsageEvents.Event.MOVE_TO_FOREGROUND
+    public static final int MOVE_TO_FOREGROUND = 1;
+
+    private final long initialLookback;
+    private long highWaterMark = 0;
+    private String foregroundPackage;
+
+    public ForegroundEventReducer(long initialLookback) {
+        this.initialLookback = initialLookback;
+    }
+
+    /**
+     * Start of the next query window, or -1 if there is nothing new to read yet.
+     */
+    public long queryStart(long now) {
+        if (highWaterMark > now) {
+            // Wall clock moved backwards (NTP or manual change), start over
+            highWaterMark = 0;
+        }
+        long begin = highWaterMark > 0 ? highWaterMark + 1 : now - initialLookback;
+        return begin < now ? begin : -1;
+    }
+
+    /**
+     * Reads all events from the cursor and returns the foreground package after them.
+     */
+    public String consume(EventCursor events) {
+        while (events.next()) {
+            long timeStamp = events.timeStamp();
+            if (timeStamp > highWaterMark) highWaterMark = timeStamp;
+            if (events.eventType() == MOVE_TO_FOREGROUND) {
+                foregroundPackage = events.packageName();
+            }
+        }
+        return foregroundPackage;
+    }
+
+    public String getForegroundPackage() {
+        return foregroundPackage;
+    }
+}
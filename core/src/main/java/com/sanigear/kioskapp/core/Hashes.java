@@ -0,0 +1,49 @@
+package com.sanigear.kioskapp.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 helpers shared by the update download, peer transfer and delta patch paths.
+ */
+public final class Hashes {
+
+    private Hashes() {}
+
+    /**
+     * Lowercase hex SHA-256 of a file's contents.
+     */
+    public static String sha256Hex(File file) throws IOException {
+        MessageDigest digest = newSha256();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[64 * 1024];
+            int len;
+            while ((len = in.read(buf)) > 0) digest.update(buf, 0, len);
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Lowercase hex of a digest.
+     */
+    public static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            chars[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(chars);
+    }
+
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JVM and Android ships SHA-256
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.sanigear.kioskapp.core;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+/**
+ * Opens and releases HTTP connections for core code; the app supplies its shared transport.
+ */
+public interface HttpConnector {
+
+    HttpURLConnection open(String url) throws IOException;
+
+    /**
+     * Gives the connection back once the response is no longer needed; accepts null.
+     */
+    void release(HttpURLConnection conn);
+}
@@ -0,0 +1,80 @@
+package com.sanigear.kioskapp.core;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Daily time range in which the kiosk may restart to install an update, e.g. 02:00 to 05:00.
+ * Times are minutes after local midnight; a window whose end is before its start runs past
+ * midnight (22:00 to 01:00).
+ */
+public final class MaintenanceWindow {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final int startMinute;
+    private final int endMinute;
+
+    public MaintenanceWindow(int startMinute, int endMinute) {
+        this.startMinute = Math.floorMod(startMinute, MINUTES_PER_DAY);
+        this.endMinute = Math.floorMod(endMinute, MINUTES_PER_DAY);
+    }
+
+    public boolean contains(Calendar now) {
+        int minute = minuteOfDay(now);
+        if (startMinute == endMinute) return true; // Zero-length window means "any time"
+        if (startMinute < endMinute) return minute >= startMinute && minute < endMinute;
+        return minute >= startMinute || minute < endMinute;
+    }
+
+    /**
+     * Milliseconds until the window next opens; 0 if it is open now.
+     */
+    public long millisUntilOpen(Calendar now) {
+        if (contains(now)) return 0;
+        return millisUntil(now, startMinute);
+    }
+
+    /**
+     * Milliseconds until the window closes; 0 if it is closed now.
+     */
+    public long millisUntilClose(Calendar now) {
+        if (!contains(now)) return 0;
+        if (startMinute == endMinute) return Long.MAX_VALUE;
+        return millisUntil(now, endMinute);
+    }
+
+    @Override
+    public String toString() {
+        return format(startMinute) + "-" + format(endMinute);
+    }
+
+    private static long millisUntil(Calendar now, int targetMinute) {
+        Calendar target = (Calendar) now.clone();
+        // Pick the day first and set the time on it, so a time the clocks skip that night (the
+        // spring-forward hour) resolves forwards rather than an hour early
+        if (targetMinute <= minuteOfDay(now)) target.add(Calendar.DAY_OF_MONTH, 1);
+        target.set(Calendar.HOUR_OF_DAY, targetMinute / 60);
+        target.set(Calendar.MINUTE, targetMinute % 60);
+        target.set(Calendar.SECOND, 0);
+        target.set(Calendar.MILLISECOND, 0);
+        long millis = target.getTimeInMillis();
+        // A time the clocks pass twice (the fall-back hour) resolves to its second occurrence;
+        // the first one is the same wall time one DST shift earlier
+        TimeZone zone = target.getTimeZone();
+        long first = millis - zone.getDSTSavings();
+        if (first > now.getTimeInMillis() && zone.getOffset(first) - zone.getOffset(millis) == zone.getDSTSavings()) {
+            millis = first;
+        }
+        return millis - now.getTimeInMillis();
+    }
+
+    private static int minuteOfDay(Calendar c) {
+        return c.get(Calendar.HOUR_OF_DAY) * 60 + c.get(Calendar.MINUTE);
+    }
+
+    private static String format(int minute) {
+        return String.format(Locale.US, "%02d:%02d", minute / 60, minute % 60);
+    }
+}
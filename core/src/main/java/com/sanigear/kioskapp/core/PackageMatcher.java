@@ -0,0 +1,9 @@
+package com.sanigear.kioskapp.core;
+
+/**
+ * Decides whether an app may be in the foreground while the kiosk is running.
+ */
+public interface PackageMatcher {
+
+    boolean isAllowed(String packageName);
+}
@@ -0,0 +1,148 @@
+package com.sanigear.kioskapp.core;
+
+import java.util.Arrays;
+
+/**
+ * Single source for the kiosk package lists (watchdog whitelist and lock task packages).
+ * Allowed packages are compiled into a character trie so a lookup walks the package name once,
+ * independent of how many entries are whitelisted, and never allocates.
+ */
+public final class PackagePolicy implements PackageMatcher {
+
+    public static final String KIOSK_PACKAGE = "com.sanigear.kioskapp";
+
+    // Apps the watchdog lets come to the foreground (sub-packages included)
+    private static final String[] ALLOWED_PACKAGES = {
+            KIOSK_PACKAGE,
+            "com.adobe.reader",
+            "com.android.printspooler",
+            "com.android.bips",
+            "com.google.android.printservice.recommendation",
+            "com.google.android.packageinstaller",
+            "com.android.settings"
+    };
+
+    // Apps permitted to run while the device is in lock task mode; the print spooler and the
+    // built-in print service let the print dialog open without leaving lock task mode
+    private static final String[] LOCK_TASK_PACKAGES = {
+            KIOSK_PACKAGE,
+            "com.android.printspooler",
+            "com.android.bips",
+            "com.google.android.packageinstaller",
+            "com.android.settings",
+            "com.android.systemui"
+    };
+
+    private static final int CACHE_SIZE = 64; // Must be a power of two
+
+    private static final PackagePolicy KIOSK = new PackagePolicy(ALLOWED_PACKAGES);
+
+    private final Node root = new Node();
+
+    // Direct-mapped verdict caches. The policy never changes after construction, so a key found
+    // in either table is always correct even when two threads race on the same slot.
+    private final String[] allowedCache = new String[CACHE_SIZE];
+    private final String[] deniedCache = new String[CACHE_SIZE];
+
+    public PackagePolicy(String... allowedPackages) {
+        for (String allowed : allowedPackages) {
+            root.insert(allowed);
+        }
+    }
+
+    /**
+     * Policy used by the kiosk activity and the watchdog.
+     */
+    public static PackagePolicy kiosk() {
+        return KIOSK;
+    }
+
+    /**
+     * Packages passed to DevicePolicyManager.setLockTaskPackages().
+     */
+    public static String[] lockTaskPackages() {
+        return Arrays.copyOf(LOCK_TASK_PACKAGES, LOCK_TASK_PACKAGES.length);
+    }
+
+    /**
+     * True if the package equals an allowed package or is a sub-package of one.
+     */
+    @Override
+    public boolean isAllowed(String packageName) {
+        if (packageName == null) return false;
+
+        int slot = packageName.hashCode() & (CACHE_SIZE - 1);
+        if (matches(allowedCache[slot], packageName)) return true;
+        if (matches(deniedCache[slot], packageName)) return false;
+
+        boolean allowed = root.matchesPrefixOf(packageName);
+        if (allowed) {
+            allowedCache[slot] = packageName;
+        } else {
+            deniedCache[slot] = packageName;
+        }
+        return allowed;
+    }
+
+    private static boolean matches(String cached, String packageName) {
+        return cached != null && (cached == packageName || cached.equals(packageName));
+    }
+
+    /**
+     * Trie node; children are kept in parallel arrays sorted by label for binary search.
+     */
+    private static final class Node {
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        void insert(String packageName) {
+            Node node = this;
+            for (int i = 0; i < packageName.length(); i++) {
+                node = node.childOrCreate(packageName.charAt(i));
+            }
+            node.terminal = true;
+        }
+
+        /**
+         * Walks the trie along the package name; a terminal node that lines up with the end of
+         * the name or a '.' separator is a match.
+         */
+        boolean matchesPrefixOf(String packageName) {
+            Node node = this;
+            int length = packageName.length();
+            for (int i = 0; i < length; i++) {
+                char c = packageName.charAt(i);
+                if (c == '.' && node.terminal) return true;
+                node = node.child(c);
+                if (node == null) return false;
+            }
+            return node.terminal;
+        }
+
+        private Node child(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node childOrCreate(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index >= 0) return children[index];
+
+            int insertAt = -index - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(labels, insertAt, newLabels, insertAt + 1, labels.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+
+            Node created = new Node();
+            newLabels[insertAt] = label;
+            newChildren[insertAt] = created;
+            labels = newLabels;
+            children = newChildren;
+            return created;
+        }
+    }
+}
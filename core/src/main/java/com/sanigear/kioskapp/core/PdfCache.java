@@ -0,0 +1,300 @@
+package com.sanigear.kioskapp.core;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk cache for downloaded PDFs, keyed by URL and the portal session cookie.
+ * Entries keep their ETag/Last-Modified and are revalidated with a conditional request, so an
+ * unchanged document costs a 304 instead of a full download. Least recently used entries are
+ * evicted once the cache grows past its byte budget.
+ * <p>
+ * The cached copy is served when the server can't be reached or fails (5xx). A 4xx answer means
+ * the document is gone or no longer ours to see, so the entry is dropped and the error thrown.
+ */
+public class PdfCache {
+
+    private static final String PDF_SUFFIX = ".pdf";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    public interface ProgressListener {
+        void onProgress(long bytesRead, long totalBytes);
+    }
+
+    /**
+     * Cache outcomes, for logging and metrics.
+     */
+    public interface Listener {
+        void onHit(String url);
+
+        void onMiss(String url, long bytes, long elapsedMs);
+
+        void onStale(String url, IOException cause);
+    }
+
+    /**
+     * The server answered with a status other than 200 or 304.
+     */
+    public static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int code;
+
+        public HttpStatusException(int code) {
+            super("HTTP error: " + code);
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+
+    private final File dir;
+    private final long maxBytes;
+    private final HttpConnector connector;
+    private final String sessionCookieName;
+    private final Listener listener;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleServes = new AtomicLong();
+
+    /**
+     * @param sessionCookieName cookie that identifies the portal session, or null to pick
+     *                          session-like names (containing "sess", or ending in "sid")
+     */
+    public PdfCache(File dir, long maxBytes, HttpConnector connector, String sessionCookieName, Listener listener) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.connector = connector;
+        this.sessionCookieName = sessionCookieName;
+        this.listener = listener;
+        dir.mkdirs();
+    }
+
+    /**
+     * Returns a local copy of the PDF, revalidating a cached entry or downloading it.
+     * Falls back to a cached copy if the server can't be reached.
+     */
+    public File fetch(String url, String cookie, ProgressListener progress) throws IOException {
+        String key = keyFor(url, sessionCookie(cookie, sessionCookieName));
+        File pdfFile = new File(dir, key + PDF_SUFFIX);
+        File metaFile = new File(dir, key + META_SUFFIX);
+        Properties meta = pdfFile.isFile() ? readMeta(metaFile) : null;
+
+        HttpURLConnection conn = null;
+        try {
+            conn = connector.open(url);
+            if (cookie != null) conn.setRequestProperty("Cookie", cookie);
+            if (meta != null) {
+                String etag = meta.getProperty("etag");
+                String lastModified = meta.getProperty("lastModified");
+                if (etag != null) conn.setRequestProperty("If-None-Match", etag);
+                if (lastModified != null) conn.setRequestProperty("If-Modified-Since", lastModified);
+            }
+
+            int code = conn.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && meta != null) {
+                hits.incrementAndGet();
+                touch(pdfFile);
+                if (listener != null) listener.onHit(url);
+                return pdfFile;
+            }
+            if (code != HttpURLConnection.HTTP_OK) throw new HttpStatusException(code);
+
+            misses.incrementAndGet();
+            long startedAt = System.nanoTime();
+            long bytes = download(conn, pdfFile, progress);
+
+            Properties newMeta = new Properties();
+            newMeta.setProperty("url", url);
+            if (conn.getHeaderField("ETag") != null)
+                newMeta.setProperty("etag", conn.getHeaderField("ETag"));
+            if (conn.getHeaderField("Last-Modified") != null)
+                newMeta.setProperty("lastModified", conn.getHeaderField("Last-Modified"));
+            writeMeta(metaFile, newMeta);
+
+            evict(pdfFile);
+            if (listener != null) listener.onMiss(url, bytes, (System.nanoTime() - startedAt) / 1000000);
+            return pdfFile;
+
+        } catch (HttpStatusException e) {
+            if (e.getCode() >= 500 && meta != null) return serveStale(url, pdfFile, e);
+            // Deleted, revoked or signed out: the cached copy must not outlive it
+            delete(pdfFile, metaFile);
+            throw e;
+        } catch (IOException e) {
+            if (meta == null || Thread.currentThread().isInterrupted()) throw e;
+            // Server unreachable, the last good copy is better than nothing
+            return serveStale(url, pdfFile, e);
+        } finally {
+            connector.release(conn);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getStaleServes() {
+        return staleServes.get();
+    }
+
+    /**
+     * Counters plus the size on disk. Lists the cache directory, so not for every request.
+     */
+    public String stats() {
+        return "hits=" + hits.get() + " misses=" + misses.get() + " stale=" + staleServes.get()
+                + " size=" + totalBytes() / 1024 + "KB/" + maxBytes / 1024 + "KB";
+    }
+
+    private File serveStale(String url, File pdfFile, IOException cause) {
+        staleServes.incrementAndGet();
+        touch(pdfFile);
+        if (listener != null) listener.onStale(url, cause);
+        return pdfFile;
+    }
+
+    private long download(HttpURLConnection conn, File target, ProgressListener progress) throws IOException {
+        // Per thread: a cancelled download may still be draining while the same URL is fetched again
+        File temp = new File(target.getPath() + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+        long total = conn.getContentLengthLong();
+        long read = 0;
+        try (InputStream in = new BufferedInputStream(conn.getInputStream());
+             OutputStream out = new FileOutputStream(temp)) {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+                read += len;
+                if (progress != null) progress.onProgress(read, total);
+                // Cancelled or timed out; stop writing before a retry starts on the same temp file
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Download cancelled");
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Could not move download into cache: " + target);
+        }
+        return read;
+    }
+
+    /**
+     * Removes least recently used entries until the cache fits its budget.
+     */
+    private synchronized void evict(File keep) {
+        File[] pdfs = dir.listFiles((d, name) -> name.endsWith(PDF_SUFFIX));
+        if (pdfs == null) return;
+
+        long total = 0;
+        for (File f : pdfs) total += f.length();
+        if (total <= maxBytes) return;
+
+        Arrays.sort(pdfs, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : pdfs) {
+            if (total <= maxBytes) break;
+            if (f.equals(keep)) continue;
+            long length = f.length();
+            String key = f.getName().substring(0, f.getName().length() - PDF_SUFFIX.length());
+            if (f.delete()) {
+                new File(dir, key + META_SUFFIX).delete();
+                total -= length;
+            }
+        }
+    }
+
+    private long totalBytes() {
+        File[] pdfs = dir.listFiles((d, name) -> name.endsWith(PDF_SUFFIX));
+        long total = 0;
+        if (pdfs != null) for (File f : pdfs) total += f.length();
+        return total;
+    }
+
+    private static void delete(File pdfFile, File metaFile) {
+        pdfFile.delete();
+        metaFile.delete();
+    }
+
+    // Last-modified time doubles as the LRU access time
+    private static void touch(File file) {
+        file.setLastModified(System.currentTimeMillis());
+    }
+
+    private static Properties readMeta(File metaFile) {
+        if (!metaFile.isFile()) return null;
+        Properties meta = new Properties();
+        try (InputStream in = new FileInputStream(metaFile)) {
+            meta.load(in);
+            return meta;
+        } catch (IOException e) {
+            return null; // Unreadable metadata, download again
+        }
+    }
+
+    private static void writeMeta(File metaFile, Properties meta) throws IOException {
+        try (OutputStream out = new FileOutputStream(metaFile)) {
+            meta.store(out, null);
+        }
+    }
+
+    /**
+     * The session part of a Cookie header, so rotating analytics or CSRF cookies don't change the key.
+     * Returns the named cookie, or all session-like cookies when name is null, in header order.
+     */
+    static String sessionCookie(String cookie, String name) {
+        if (cookie == null) return null;
+        StringBuilder session = new StringBuilder();
+        for (String part : cookie.split(";")) {
+            String pair = part.trim();
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            String cookieName = pair.substring(0, eq).trim();
+            String lower = cookieName.toLowerCase(Locale.US);
+            boolean matches = name != null ? cookieName.equals(name) : lower.contains("sess") || lower.endsWith("sid");
+            if (!matches) continue;
+            if (session.length() > 0) session.append(';');
+            session.append(pair);
+        }
+        return session.length() > 0 ? session.toString() : null;
+    }
+
+    /**
+     * Hex SHA-256 of the URL and session value; also names the portal asset cache files.
+     */
+    public static String keyFor(String url, String session) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(url.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            if (session != null) digest.update(session.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
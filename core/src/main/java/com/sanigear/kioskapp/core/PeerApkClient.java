@@ -0,0 +1,87 @@
+package com.sanigear.kioskapp.core;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Locale;
+
+/**
+ * Fetches an APK from a {@link PeerApkServer}. The file is hashed while it streams to disk and
+ * only kept if it matches the digest from the release metadata, so a peer can save bandwidth but
+ * can never change what gets installed.
+ */
+public final class PeerApkClient {
+
+    private PeerApkClient() {}
+
+    /**
+     * Downloads /apk/&lt;sha256&gt; from the peer into {@code out}.
+     *
+     * @param expectedSha256 hex digest the file must have
+     * @throws IOException if the peer doesn't have it, the transfer breaks or the digest differs;
+     *                     {@code out} is left untouched in that case
+     */
+    public static File fetch(String host, int port, String expectedSha256, File out, int timeoutMs)
+            throws IOException {
+        String sha256 = expectedSha256.toLowerCase(Locale.US);
+        File tmp = new File(out.getPath() + ".part");
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            OutputStream request = socket.getOutputStream();
+            request.write(("GET " + PeerApkServer.PATH_PREFIX + sha256 + " HTTP/1.1\r\n"
+                    + "Host: " + host + ":" + port + "\r\n"
+                    + "Connection: close\r\n"
+                    + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            request.flush();
+
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String status = PeerApkServer.readLine(in);
+            if (status == null || !status.startsWith("HTTP/1.") || status.split(" ").length < 2) {
+                throw new IOException("Bad response from peer " + host + ":" + port);
+            }
+            if (!"200".equals(status.split(" ")[1])) {
+                throw new IOException("Peer " + host + ":" + port + " answered " + status);
+            }
+            long length = -1;
+            String line;
+            while ((line = PeerApkServer.readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                    length = Long.parseLong(line.substring(colon + 1).trim());
+                }
+            }
+            if (length < 0) throw new IOException("Peer sent no Content-Length");
+
+            MessageDigest digest = Hashes.newSha256();
+            long received = 0;
+            try (OutputStream file = new FileOutputStream(tmp)) {
+                byte[] buf = new byte[64 * 1024];
+                int len;
+                while (received < length && (len = in.read(buf, 0, (int) Math.min(buf.length, length - received))) > 0) {
+                    file.write(buf, 0, len);
+                    digest.update(buf, 0, len);
+                    received += len;
+                }
+            }
+            if (received != length) throw new IOException("Peer transfer cut off at " + received + "/" + length);
+
+            String actual = Hashes.hex(digest.digest());
+            if (!sha256.equals(actual)) {
+                throw new IOException("Peer APK digest mismatch: expected " + sha256 + " got " + actual);
+            }
+            out.delete();
+            if (!tmp.renameTo(out)) throw new IOException("Could not move peer APK to " + out);
+            return out;
+        } finally {
+            tmp.delete();
+        }
+    }
+}
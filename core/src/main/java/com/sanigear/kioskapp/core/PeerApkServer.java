@@ -0,0 +1,193 @@
+package com.sanigear.kioskapp.core;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal HTTP/1.1 server that hands one verified APK to other kiosks on the LAN.
+ * The only path is "/apk/&lt;sha256&gt;", so a peer asking for a different build gets a 404
+ * instead of the wrong file. GET and HEAD are supported, every response closes the connection,
+ * and at most {@link #MAX_CLIENTS} peers are served at once; the rest get a 503 and fall back
+ * to another peer or the internet.
+ */
+public final class PeerApkServer implements Closeable {
+
+    public static final String PATH_PREFIX = "/apk/";
+    static final int MAX_CLIENTS = 2;
+    private static final int SOCKET_TIMEOUT = 30000;
+    private static final int MAX_LINE = 4096;
+
+    private final File apk;
+    private final String sha256;
+    private final ThreadPoolExecutor clients = new ThreadPoolExecutor(0, MAX_CLIENTS, 30, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), r -> {
+                Thread t = new Thread(r, "PeerApkClient");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private volatile ServerSocket server;
+    private final AtomicInteger served = new AtomicInteger();
+
+    public PeerApkServer(File apk, String sha256) {
+        this.apk = apk;
+        this.sha256 = sha256.toLowerCase(Locale.US);
+    }
+
+    /**
+     * Binds and starts accepting.
+     *
+     * @param bindAddress null for all interfaces, or the loopback address for local testing
+     * @param port        0 for any free port
+     * @return the bound port, to be advertised
+     */
+    public synchronized int start(InetAddress bindAddress, int port) throws IOException {
+        if (server != null) return server.getLocalPort();
+        ServerSocket socket = new ServerSocket(port, MAX_CLIENTS * 2, bindAddress);
+        server = socket;
+        Thread acceptor = new Thread(() -> acceptLoop(socket), "PeerApkServer");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return socket.getLocalPort();
+    }
+
+    public int getPort() {
+        ServerSocket socket = server;
+        return socket != null ? socket.getLocalPort() : -1;
+    }
+
+    public File getApk() {
+        return apk;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * Number of complete APK transfers since start.
+     */
+    public int getServedCount() {
+        return served.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        ServerSocket socket = server;
+        server = null;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+        clients.shutdownNow();
+    }
+
+    private void acceptLoop(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            Socket client;
+            try {
+                client = socket.accept();
+            } catch (IOException e) {
+                return; // Closed
+            }
+            try {
+                clients.execute(() -> handle(client));
+            } catch (RejectedExecutionException e) {
+                try (Socket busy = client) {
+                    busy.setSoTimeout(SOCKET_TIMEOUT);
+                    writeHead(busy.getOutputStream(), "503 Service Unavailable", 0);
+                } catch (IOException ignored) {
+                    // Peer went away
+                }
+            }
+        }
+    }
+
+    private void handle(Socket client) {
+        try (Socket socket = client) {
+            socket.setSoTimeout(SOCKET_TIMEOUT);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+
+            String requestLine = readLine(in);
+            if (requestLine == null) return;
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                // Headers are not needed; Range is not supported on purpose, peers are on the LAN
+            }
+
+            String[] parts = requestLine.split(" ");
+            if (parts.length < 2) {
+                writeHead(out, "400 Bad Request", 0);
+                return;
+            }
+            boolean head = "HEAD".equals(parts[0]);
+            if (!head && !"GET".equals(parts[0])) {
+                writeHead(out, "405 Method Not Allowed", 0);
+                return;
+            }
+            if (!parts[1].equalsIgnoreCase(PATH_PREFIX + sha256) || !apk.isFile()) {
+                writeHead(out, "404 Not Found", 0);
+                return;
+            }
+
+            long length = apk.length();
+            writeHead(out, "200 OK", length);
+            if (head) return;
+            try (InputStream file = new FileInputStream(apk)) {
+                byte[] buf = new byte[64 * 1024];
+                int len;
+                while ((len = file.read(buf)) > 0) out.write(buf, 0, len);
+            }
+            out.flush();
+            served.incrementAndGet();
+        } catch (IOException ignored) {
+            // Peer gave up mid-transfer; it falls back to another source on its own
+        }
+    }
+
+    private void writeHead(OutputStream out, String status, long length) throws IOException {
+        String head = "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: application/vnd.android.package-archive\r\n"
+                + "Content-Length: " + length + "\r\n"
+                + "ETag: \"" + sha256 + "\"\r\n"
+                + "Connection: close\r\n"
+                + "\r\n";
+        out.write(head.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    // Reads a CRLF (or LF) terminated line; null at end of stream
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                int end = sb.length();
+                if (end > 0 && sb.charAt(end - 1) == '\r') sb.setLength(end - 1);
+                return sb.toString();
+            }
+            if (sb.length() >= MAX_LINE) throw new IOException("Header line too long");
+            sb.append((char) c);
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+}
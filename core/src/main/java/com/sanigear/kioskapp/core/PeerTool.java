@@ -0,0 +1,36 @@
+package com.sanigear.kioskapp.core;
+
+import java.io.File;
+import java.net.InetAddress;
+
+/**
+ * Command-line stand-in for a kiosk's peer endpoint, to try peer updates with several instances
+ * on one machine over loopback:
+ * <pre>
+ *   java -cp core.jar com.sanigear.kioskapp.core.PeerTool serve app-release.apk [port]
+ *   java -cp core.jar com.sanigear.kioskapp.core.PeerTool fetch 127.0.0.1 &lt;port&gt; &lt;sha256&gt; out.apk
+ * </pre>
+ * Discovery is Android NSD on the devices; here the port and digest printed by "serve" are passed by hand.
+ */
+public final class PeerTool {
+
+    private PeerTool() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && "serve".equals(args[0])) {
+            File apk = new File(args[1]);
+            String sha256 = Hashes.sha256Hex(apk);
+            PeerApkServer server = new PeerApkServer(apk, sha256);
+            int port = server.start(InetAddress.getLoopbackAddress(), args.length > 2 ? Integer.parseInt(args[2]) : 0);
+            System.out.println("Serving " + apk.getName() + " on 127.0.0.1:" + port + " sha256 " + sha256);
+            Thread.currentThread().join();
+        } else if (args.length == 5 && "fetch".equals(args[0])) {
+            long start = System.nanoTime();
+            File out = PeerApkClient.fetch(args[1], Integer.parseInt(args[2]), args[3], new File(args[4]), 30000);
+            System.out.println("Fetched " + out.length() + " bytes in " + (System.nanoTime() - start) / 1_000_000 + " ms, digest verified");
+        } else {
+            System.err.println("Usage: PeerTool serve <apk> [port] | fetch <host> <port> <sha256> <out>");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.sanigear.kioskapp.core;
+
+/**
+ * Semantic version ("3.10.1", "3.4-beta.2+build7") compared numerically, so 3.10 ranks above 3.9.
+ * Missing components count as zero, a pre-release ranks below its release, and build metadata is
+ * ignored, following semver.org precedence rules.
+ */
+public final class SemanticVersion implements Comparable<SemanticVersion> {
+
+    private final int[] numbers = new int[3];
+    private final String[] preRelease;
+
+    private SemanticVersion(String version) {
+        String v = version.trim();
+        int plus = v.indexOf('+');
+        if (plus >= 0) v = v.substring(0, plus);
+        int dash = v.indexOf('-');
+        preRelease = dash >= 0 ? v.substring(dash + 1).split("\\.") : null;
+        if (dash >= 0) v = v.substring(0, dash);
+
+        String[] parts = v.split("\\.");
+        for (int i = 0; i < Math.min(parts.length, numbers.length); i++) {
+            numbers[i] = leadingNumber(parts[i]);
+        }
+    }
+
+    /**
+     * Parses leniently; anything unparseable counts as zero rather than failing the update check.
+     */
+    public static SemanticVersion parse(String version) {
+        return new SemanticVersion(version != null ? version : "");
+    }
+
+    public int major() {
+        return numbers[0];
+    }
+
+    public int minor() {
+        return numbers[1];
+    }
+
+    public int patch() {
+        return numbers[2];
+    }
+
+    @Override
+    public int compareTo(SemanticVersion other) {
+        for (int i = 0; i < numbers.length; i++) {
+            int c = Integer.compare(numbers[i], other.numbers[i]);
+            if (c != 0) return c;
+        }
+        if (preRelease == null || other.preRelease == null) {
+            // 1.0.0-beta < 1.0.0
+            return preRelease == null ? (other.preRelease == null ? 0 : 1) : -1;
+        }
+        for (int i = 0; i < Math.min(preRelease.length, other.preRelease.length); i++) {
+            int c = compareIdentifier(preRelease[i], other.preRelease[i]);
+            if (c != 0) return c;
+        }
+        return Integer.compare(preRelease.length, other.preRelease.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SemanticVersion && compareTo((SemanticVersion) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return (numbers[0] * 31 + numbers[1]) * 31 + numbers[2];
+    }
+
+    @Override
+    public String toString() {
+        String base = numbers[0] + "." + numbers[1] + "." + numbers[2];
+        return preRelease != null ? base + "-" + String.join(".", preRelease) : base;
+    }
+
+    // Numeric identifiers compare as numbers and rank below alphanumeric ones
+    private static int compareIdentifier(String a, String b) {
+        boolean aNumeric = isNumeric(a);
+        boolean bNumeric = isNumeric(b);
+        if (aNumeric && bNumeric) {
+            return a.length() != b.length() ? Integer.compare(a.length(), b.length()) : a.compareTo(b);
+        }
+        if (aNumeric != bNumeric) return aNumeric ? -1 : 1;
+        return a.compareTo(b);
+    }
+
+    private static boolean isNumeric(String s) {
+        if (s.isEmpty()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static int leadingNumber(String s) {
+        int value = 0;
+        for (int i = 0; i < s.length() && Character.isDigit(s.charAt(i)); i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+            if (value > 1_000_000) break; // Nobody ships version 1000001; avoids overflow
+        }
+        return value;
+    }
+}
@@ -0,0 +1,41 @@
+package com.sanigear.kioskapp.core;
+
+import java.util.Locale;
+
+/**
+ * Navigation rules for the kiosk WebView: stay on the portal domain, hand PDFs to the
+ * native viewer.
+ */
+public class UrlPolicy {
+
+    private final String allowedDomain;
+
+    public UrlPolicy(String allowedDomain) {
+        this.allowedDomain = allowedDomain;
+    }
+
+    public String getAllowedDomain() {
+        return allowedDomain;
+    }
+
+    public boolean isPdf(String url) {
+        return url.endsWith(".pdf");
+    }
+
+    /**
+     * True for the portal domain itself and its subdomains; "automation.sanigear.app.evil.com"
+     * and "notautomation.sanigear.app" are not.
+     */
+    public boolean isAllowedHost(String host) {
+        if (host == null) return false;
+        String h = host.toLowerCase(Locale.US);
+        return h.equals(allowedDomain) || h.endsWith("." + allowedDomain);
+    }
+
+    /**
+     * True if the WebView must not navigate to this URL itself.
+     */
+    public boolean shouldBlockNavigation(String url, String host) {
+        return isPdf(url) || !isAllowedHost(host);
+    }
+}
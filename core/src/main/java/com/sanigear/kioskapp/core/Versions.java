@@ -0,0 +1,26 @@
+package com.sanigear.kioskapp.core;
+
+/**
+ * Version comparison for release tags.
+ */
+public final class Versions {
+
+    private Versions() {}
+
+    /**
+     * Strips the release tag prefix, e.g. "SanigearKiosk_v3.4" becomes "3.4".
+     */
+    public static String fromTag(String tagName) {
+        String version = tagName.trim();
+        if (version.startsWith("SanigearKiosk_")) version = version.substring("SanigearKiosk_".length());
+        if (version.startsWith("v") || version.startsWith("V")) version = version.substring(1);
+        return version;
+    }
+
+    /**
+     * Semantic version comparison, so "3.10" is newer than "3.9".
+     */
+    public static boolean isNewer(String newVer, String oldVer) {
+        return SemanticVersion.parse(newVer).compareTo(SemanticVersion.parse(oldVer)) > 0;
+    }
+}
@@ -0,0 +1,150 @@
+package com.sanigear.kioskapp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class AppendLogStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void valuesSurviveReopening() throws IOException {
+        File file = folder.newFile("store.log");
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            store.put("url", "https://automation.sanigear.app/a/home");
+            store.put("scrollY", 120);
+            store.put("kioskDisabled", true);
+            store.put("lastCheck", 1_700_000_000_000L);
+        }
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            assertEquals("https://automation.sanigear.app/a/home", store.get("url"));
+            assertEquals(120L, store.get("scrollY"));
+            assertEquals(Boolean.TRUE, store.get("kioskDisabled"));
+            assertEquals(1_700_000_000_000L, store.get("lastCheck"));
+        }
+    }
+
+    @Test
+    public void replayKeepsTheLatestValueAndDeletes() throws IOException {
+        File file = folder.newFile("store.log");
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            store.put("a", "1");
+            store.flush();
+            store.put("a", "2");
+            store.put("b", "gone");
+            store.flush();
+            store.put("b", null);
+        }
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            assertEquals("2", store.get("a"));
+            assertFalse(store.contains("b"));
+        }
+    }
+
+    @Test
+    public void unchangedValueWritesNothing() throws IOException {
+        try (AppendLogStore store = AppendLogStore.open(folder.newFile("store.log"))) {
+            store.put("a", "1");
+            store.flush();
+            int size = store.getLogSize();
+            store.put("a", "1");
+            store.flush();
+            assertEquals(size, store.getLogSize());
+        }
+    }
+
+    @Test
+    public void tornRecordLosesOnlyTheNewestValue() throws IOException {
+        File file = folder.newFile("store.log");
+        int end;
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            store.put("a", "kept");
+            store.flush();
+            store.put("b", "torn");
+            store.flush();
+            end = store.getLogSize();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(end - 2); // Inside the last record's CRC
+            raf.write(raf.read() ^ 0xff);
+        }
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            assertEquals("kept", store.get("a"));
+            assertNull(store.get("b"));
+            // The damaged tail is overwritten by the next append
+            store.put("c", "after");
+        }
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            assertEquals("kept", store.get("a"));
+            assertEquals("after", store.get("c"));
+        }
+    }
+
+    @Test
+    public void corruptHeaderStartsEmpty() throws IOException {
+        File file = folder.newFile("store.log");
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            store.put("a", "1");
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeInt(0);
+        }
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            assertTrue(store.keys().isEmpty());
+        }
+    }
+
+    @Test
+    public void fullLogIsCompacted() throws IOException {
+        File file = folder.newFile("store.log");
+        String value = new String(new char[1000]).replace('\0', 'x');
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            store.put("other", "stays");
+            for (int i = 0; i < 200; i++) {
+                store.put("url", i + value);
+                store.flush();
+            }
+            assertTrue(store.getLogSize() < 64 * 1024);
+        }
+        assertEquals(64 * 1024, file.length()); // Rewritten in place, not grown
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            assertEquals(199 + value, store.get("url"));
+            assertEquals("stays", store.get("other"));
+        }
+    }
+
+    @Test
+    public void logGrowsWhenLiveValuesNeedTheSpace() throws IOException {
+        File file = folder.newFile("store.log");
+        String value = new String(new char[1000]).replace('\0', 'x');
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            for (int i = 0; i < 100; i++) {
+                store.put("key" + i, value);
+                store.flush();
+            }
+        }
+        assertTrue(file.length() > 64 * 1024);
+        try (AppendLogStore store = AppendLogStore.open(file)) {
+            assertEquals(100, store.keys().size());
+            assertEquals(value, store.get("key99"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedTypeIsRejected() throws IOException {
+        try (AppendLogStore store = AppendLogStore.open(folder.newFile("store.log"))) {
+            store.put("a", 1.5);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.sanigear.kioskapp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AssetCachePolicyTest {
+
+    @Test
+    public void unversionedAssetWithShortMaxAgeIsNotCached() {
+        assertFalse(AssetCachePolicy.of("public, max-age=3600", "/static/app.js", null).isCacheable());
+        assertFalse(AssetCachePolicy.of(null, "/static/style.css", null).isCacheable());
+    }
+
+    @Test
+    public void immutableIsCachedForever() {
+        AssetCachePolicy policy = AssetCachePolicy.of("public, max-age=31536000, immutable", "/static/app.js", null);
+        assertTrue(policy.isCacheable());
+        assertEquals(Long.MAX_VALUE, policy.freshForMillis());
+    }
+
+    @Test
+    public void longMaxAgeIsCachedForThatLong() {
+        AssetCachePolicy policy = AssetCachePolicy.of("max-age=604800", "/fonts/roboto.woff2", null);
+        assertTrue(policy.isCacheable());
+        assertEquals(604800_000L, policy.freshForMillis());
+    }
+
+    @Test
+    public void fingerprintedUrlsAreCached() {
+        assertTrue(AssetCachePolicy.of(null, "/static/app.3f9a2c1b.js", null).isCacheable());
+        assertTrue(AssetCachePolicy.of(null, "/static/main-5d41402abc4b.css", null).isCacheable());
+        assertTrue(AssetCachePolicy.of("max-age=60", "/static/app.js", "v=3.4.1").isCacheable());
+        assertEquals(60_000L, AssetCachePolicy.of("max-age=60", "/static/app.js", "v=3.4.1").freshForMillis());
+        assertFalse(AssetCachePolicy.of(null, "/static/app.min.js", null).isCacheable());
+    }
+
+    @Test
+    public void noStoreAndNoCacheWin() {
+        assertFalse(AssetCachePolicy.of("no-store, immutable", "/a.js", null).isCacheable());
+        assertFalse(AssetCachePolicy.of("no-cache", "/app.3f9a2c1b.js", null).isCacheable());
+        assertFalse(AssetCachePolicy.of("max-age=0", "/app.3f9a2c1b.js", null).isCacheable());
+    }
+}
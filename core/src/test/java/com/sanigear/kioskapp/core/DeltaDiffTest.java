@@ -0,0 +1,104 @@
+package com.sanigear.kioskapp.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class DeltaDiffTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void roundTripReproducesTheNewFile() throws IOException {
+        byte[] old = randomBytes(200_000);
+        byte[] neu = edit(old);
+        File patch = roundTrip(old, neu);
+        assertTrue("Patch should be much smaller than the new file", patch.length() < neu.length / 4);
+    }
+
+    @Test
+    public void roundTripWithUnrelatedFiles() throws IOException {
+        roundTrip(randomBytes(5_000), randomBytes(7_000));
+    }
+
+    @Test
+    public void roundTripWithEmptyFiles() throws IOException {
+        roundTrip(new byte[0], randomBytes(1_000));
+        roundTrip(randomBytes(1_000), new byte[0]);
+    }
+
+    @Test
+    public void roundTripWithRepetitiveInput() throws IOException {
+        byte[] old = new byte[50_000];
+        for (int i = 0; i < old.length; i++) old[i] = (byte) (i % 7 == 0 ? 0 : 'a');
+        byte[] neu = old.clone();
+        neu[25_000] = 'z';
+        roundTrip(old, neu);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFormats() throws IOException {
+        File old = write("old", randomBytes(100));
+        File patch = write("patch", randomBytes(100));
+        File out = new File(temp.getRoot(), "out");
+        try {
+            DeltaPatcher.apply(old, patch, out);
+        } finally {
+            assertFalse(out.exists());
+        }
+    }
+
+    // Diff, patch, and compare the SHA-256 of the result with the new file
+    private File roundTrip(byte[] old, byte[] neu) throws IOException {
+        File oldFile = write("old.apk", old);
+        File newFile = write("new.apk", neu);
+        File patch = new File(temp.getRoot(), "update.patch");
+        File rebuilt = new File(temp.getRoot(), "rebuilt.apk");
+        DeltaDiff.diff(oldFile, newFile, patch);
+        DeltaPatcher.apply(oldFile, patch, rebuilt);
+        assertEquals(Hashes.sha256Hex(newFile), Hashes.sha256Hex(rebuilt));
+        assertArrayEquals(neu, Files.readAllBytes(rebuilt.toPath()));
+        return patch;
+    }
+
+    // A typical release: a few bytes changed, a block inserted, a block removed
+    private byte[] edit(byte[] old) {
+        byte[] inserted = randomBytes(3_000);
+        byte[] neu = new byte[old.length + inserted.length - 2_000];
+        int split = old.length / 3;
+        System.arraycopy(old, 0, neu, 0, split);
+        System.arraycopy(inserted, 0, neu, split, inserted.length);
+        System.arraycopy(old, split + 2_000, neu, split + inserted.length, old.length - split - 2_000);
+        for (int i = 0; i < 50; i++) neu[random.nextInt(neu.length)] ^= 1;
+        return neu;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private File write(String name, byte[] data) throws IOException {
+        File file = new File(temp.getRoot(), name);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return file;
+    }
+}
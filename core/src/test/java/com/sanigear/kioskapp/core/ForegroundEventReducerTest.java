@@ -0,0 +1,92 @@
+package com.sanigear.kioskapp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ForegroundEventReducerTest {
+
+    private static final int MOVE_TO_BACKGROUND = 2;
+
+    private final ForegroundEventReducer reducer = new ForegroundEventReducer(10_000);
+
+    @Test
+    public void firstQueryLooksBack() {
+        assertEquals(90_000, reducer.queryStart(100_000));
+    }
+
+    @Test
+    public void lastForegroundEventWins() {
+        String pkg = reducer.consume(events(
+                event(1_000, ForegroundEventReducer.MOVE_TO_FOREGROUND, "com.sanigear.kioskapp"),
+                event(2_000, ForegroundEventReducer.MOVE_TO_FOREGROUND, "com.adobe.reader"),
+                event(3_000, MOVE_TO_BACKGROUND, "com.adobe.reader")));
+        assertEquals("com.adobe.reader", pkg);
+        assertEquals("com.adobe.reader", reducer.getForegroundPackage());
+    }
+
+    @Test
+    public void noEventsKeepsThePreviousPackage() {
+        assertNull(reducer.consume(events()));
+        reducer.consume(events(event(1_000, ForegroundEventReducer.MOVE_TO_FOREGROUND, "com.sanigear.kioskapp")));
+        assertEquals("com.sanigear.kioskapp", reducer.consume(events()));
+    }
+
+    @Test
+    public void nextQueryStartsAfterTheNewestEvent() {
+        reducer.consume(events(
+                event(95_000, ForegroundEventReducer.MOVE_TO_FOREGROUND, "com.sanigear.kioskapp"),
+                event(93_000, MOVE_TO_BACKGROUND, "com.android.launcher")));
+        assertEquals(95_001, reducer.queryStart(100_000));
+        assertEquals(-1, reducer.queryStart(95_001)); // Nothing new to read yet
+    }
+
+    @Test
+    public void clockGoingBackwardsStartsOver() {
+        reducer.consume(events(event(95_000, ForegroundEventReducer.MOVE_TO_FOREGROUND, "com.sanigear.kioskapp")));
+        assertEquals(40_000, reducer.queryStart(50_000));
+    }
+
+    private static Event event(long timeStamp, int type, String pkg) {
+        return new Event(timeStamp, type, pkg);
+    }
+
+    private static EventCursor events(Event... events) {
+        return new EventCursor() {
+            private int index = -1;
+
+            @Override
+            public boolean next() {
+                return ++index < events.length;
+            }
+
+            @Override
+            public long timeStamp() {
+                return events[index].timeStamp;
+            }
+
+            @Override
+            public int eventType() {
+                return events[index].type;
+            }
+
+            @Override
+            public String packageName() {
+                return events[index].pkg;
+            }
+        };
+    }
+
+    private static final class Event {
+        final long timeStamp;
+        final int type;
+        final String pkg;
+
+        Event(long timeStamp, int type, String pkg) {
+            this.timeStamp = timeStamp;
+            this.type = type;
+            this.pkg = pkg;
+        }
+    }
+}
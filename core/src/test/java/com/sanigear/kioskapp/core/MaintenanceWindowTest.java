@@ -0,0 +1,77 @@
+package com.sanigear.kioskapp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+public class MaintenanceWindowTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long MINUTE = 60 * 1000L;
+    // Clocks go forward on 2026-03-29 02:00 and back on 2026-10-25 03:00
+    private static final TimeZone BERLIN = TimeZone.getTimeZone("Europe/Berlin");
+
+    private final MaintenanceWindow night = new MaintenanceWindow(2 * 60, 5 * 60);
+    private final MaintenanceWindow acrossMidnight = new MaintenanceWindow(22 * 60, 60);
+    private final MaintenanceWindow daytime = new MaintenanceWindow(5 * 60, 0);
+
+    @Test
+    public void sameDayWindow() {
+        assertFalse(night.contains(at(2026, 6, 1, 1, 59)));
+        assertTrue(night.contains(at(2026, 6, 1, 2, 0)));
+        assertTrue(night.contains(at(2026, 6, 1, 4, 59)));
+        assertFalse(night.contains(at(2026, 6, 1, 5, 0)));
+        assertEquals(30 * MINUTE, night.millisUntilOpen(at(2026, 6, 1, 1, 30)));
+        assertEquals(HOUR, night.millisUntilClose(at(2026, 6, 1, 4, 0)));
+        assertEquals(21 * HOUR, night.millisUntilOpen(at(2026, 6, 1, 5, 0)));
+    }
+
+    @Test
+    public void windowAcrossMidnight() {
+        assertTrue(acrossMidnight.contains(at(2026, 6, 1, 23, 30)));
+        assertTrue(acrossMidnight.contains(at(2026, 6, 2, 0, 30)));
+        assertFalse(acrossMidnight.contains(at(2026, 6, 2, 1, 0)));
+        assertFalse(acrossMidnight.contains(at(2026, 6, 1, 21, 59)));
+        assertEquals(90 * MINUTE, acrossMidnight.millisUntilClose(at(2026, 6, 1, 23, 30)));
+        assertEquals(21 * HOUR, acrossMidnight.millisUntilOpen(at(2026, 6, 2, 1, 0)));
+        assertEquals("22:00-01:00", acrossMidnight.toString());
+    }
+
+    @Test
+    public void zeroLengthWindowIsAlwaysOpen() {
+        MaintenanceWindow always = new MaintenanceWindow(3 * 60, 3 * 60);
+        assertTrue(always.contains(at(2026, 6, 1, 12, 0)));
+        assertEquals(0, always.millisUntilOpen(at(2026, 6, 1, 12, 0)));
+        assertEquals(Long.MAX_VALUE, always.millisUntilClose(at(2026, 6, 1, 12, 0)));
+    }
+
+    @Test
+    public void springForwardSkipsTheMissingHour() {
+        // 02:00 doesn't exist that night; the window opens when the clock jumps to 03:00
+        assertEquals(3 * HOUR, night.millisUntilOpen(at(2026, 3, 28, 23, 0)));
+        // Midnight to 05:00 is only four real hours that night
+        assertEquals(4 * HOUR, daytime.millisUntilOpen(at(2026, 3, 29, 0, 0)));
+    }
+
+    @Test
+    public void fallBackOpensAtTheFirstOccurrence() {
+        // 02:00 happens twice that night; the window opens at the first
+        assertEquals(3 * HOUR, night.millisUntilOpen(at(2026, 10, 24, 23, 0)));
+        // Midnight to 05:00 is six real hours that night
+        assertEquals(6 * HOUR, daytime.millisUntilOpen(at(2026, 10, 25, 0, 0)));
+        // Calendar reads an ambiguous 02:30 as the second one
+        assertEquals(2 * HOUR + 30 * MINUTE, night.millisUntilClose(at(2026, 10, 25, 2, 30)));
+    }
+
+    private static Calendar at(int year, int month, int day, int hour, int minute) {
+        Calendar c = Calendar.getInstance(BERLIN);
+        c.clear();
+        c.set(year, month - 1, day, hour, minute);
+        return c;
+    }
+}
@@ -0,0 +1,84 @@
+package com.sanigear.kioskapp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class PackagePolicyTest {
+
+    private static final String[] ALLOWED = {
+            "com.sanigear.kioskapp",
+            "com.adobe.reader",
+            "com.android.printspooler",
+            "com.android.settings"
+    };
+
+    private final PackagePolicy policy = new PackagePolicy(ALLOWED);
+
+    @Test
+    public void exactMatchIsAllowed() {
+        assertTrue(policy.isAllowed("com.adobe.reader"));
+        assertTrue(policy.isAllowed("com.sanigear.kioskapp"));
+    }
+
+    @Test
+    public void dottedSubPackageIsAllowed() {
+        assertTrue(policy.isAllowed("com.adobe.reader.x"));
+        assertTrue(policy.isAllowed("com.android.settings.intelligence"));
+    }
+
+    @Test
+    public void prefixWithoutDotIsRejected() {
+        assertFalse(policy.isAllowed("com.adobe.readerx"));
+        assertFalse(policy.isAllowed("com.adobe.read"));
+        assertFalse(policy.isAllowed("com.adobe"));
+    }
+
+    @Test
+    public void nullAndEmptyAreRejected() {
+        assertFalse(policy.isAllowed(null));
+        assertFalse(policy.isAllowed(""));
+    }
+
+    @Test
+    public void repeatedLookupsKeepTheirVerdict() {
+        // The second call is answered from the verdict cache
+        for (int i = 0; i < 2; i++) {
+            assertTrue(policy.isAllowed("com.adobe.reader"));
+            assertFalse(policy.isAllowed("com.adobe.readerx"));
+        }
+    }
+
+    @Test
+    public void agreesWithHashSetLoop() {
+        Set<String> allowed = new HashSet<>(Arrays.asList(ALLOWED));
+        Random random = new Random(42);
+        String[] parts = {"com", "android", "adobe", "reader", "readerx", "sanigear", "kioskapp",
+                "settings", "printspooler", "x", "google", ""};
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder name = new StringBuilder();
+            int segments = 1 + random.nextInt(5);
+            for (int s = 0; s < segments; s++) {
+                if (s > 0) name.append('.');
+                name.append(parts[random.nextInt(parts.length)]);
+            }
+            String packageName = name.toString();
+            assertEquals(packageName, hashSetLoop(allowed, packageName), policy.isAllowed(packageName));
+        }
+    }
+
+    // The lookup the watchdog and activity used before PackagePolicy
+    private static boolean hashSetLoop(Set<String> allowed, String packageName) {
+        for (String a : allowed) {
+            if (packageName.equals(a) || packageName.startsWith(a + ".")) return true;
+        }
+        return false;
+    }
+}
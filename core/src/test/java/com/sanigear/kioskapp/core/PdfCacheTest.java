@@ -0,0 +1,198 @@
+package com.sanigear.kioskapp.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the cache against a stand-in portal on loopback.
+ */
+public class PdfCacheTest {
+
+    private static final byte[] PDF = "%PDF-1.4 work order".getBytes(StandardCharsets.UTF_8);
+    private static final String ETAG = "\"v1\"";
+    private static final String SESSION = "PHPSESSID=abc";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private HttpServer server;
+    private String url;
+    private volatile int status = 200;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile String lastIfNoneMatch;
+
+    private final HttpConnector connector = new HttpConnector() {
+        @Override
+        public HttpURLConnection open(String target) throws IOException {
+            HttpURLConnection conn = (HttpURLConnection) new URL(target).openConnection();
+            conn.setConnectTimeout(2000);
+            conn.setReadTimeout(2000);
+            return conn;
+        }
+
+        @Override
+        public void release(HttpURLConnection conn) {
+            if (conn != null) conn.disconnect();
+        }
+    };
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/docs/order.pdf", this::handle);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/docs/order.pdf";
+    }
+
+    @After
+    public void stopServer() {
+        if (server != null) server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        lastIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (status != 200) {
+            exchange.sendResponseHeaders(status, -1);
+        } else if (ETAG.equals(lastIfNoneMatch)) {
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.sendResponseHeaders(200, PDF.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(PDF);
+            }
+        }
+        exchange.close();
+    }
+
+    private PdfCache newCache() throws IOException {
+        return new PdfCache(temp.newFolder(), 1024 * 1024, connector, null, null);
+    }
+
+    @Test
+    public void downloadsOnMissAndRevalidatesWith304() throws IOException {
+        PdfCache cache = newCache();
+        File first = cache.fetch(url, SESSION, null);
+        assertArrayEquals(PDF, Files.readAllBytes(first.toPath()));
+        assertEquals(1, cache.getMisses());
+        assertNull(lastIfNoneMatch);
+
+        File second = cache.fetch(url, SESSION, null);
+        assertEquals(ETAG, lastIfNoneMatch);
+        assertEquals(first, second);
+        assertEquals(1, cache.getHits());
+        assertArrayEquals(PDF, Files.readAllBytes(second.toPath()));
+    }
+
+    @Test
+    public void notFoundDropsTheCachedCopy() throws IOException {
+        PdfCache cache = newCache();
+        File cached = cache.fetch(url, SESSION, null);
+        status = 404;
+        try {
+            cache.fetch(url, SESSION, null);
+            fail("Expected the 404 to be thrown");
+        } catch (PdfCache.HttpStatusException e) {
+            assertEquals(404, e.getCode());
+        }
+        assertFalse(cached.exists());
+        assertEquals(0, cache.getStaleServes());
+    }
+
+    @Test
+    public void serverErrorServesTheCachedCopy() throws IOException {
+        PdfCache cache = newCache();
+        File cached = cache.fetch(url, SESSION, null);
+        status = 503;
+        assertEquals(cached, cache.fetch(url, SESSION, null));
+        assertEquals(1, cache.getStaleServes());
+    }
+
+    @Test
+    public void offlineServesTheCachedCopy() throws IOException {
+        PdfCache cache = newCache();
+        File cached = cache.fetch(url, SESSION, null);
+        server.stop(0);
+        server = null;
+        assertEquals(cached, cache.fetch(url, SESSION, null));
+        assertEquals(1, cache.getStaleServes());
+        assertArrayEquals(PDF, Files.readAllBytes(cached.toPath()));
+    }
+
+    @Test(expected = IOException.class)
+    public void offlineWithoutCachedCopyFails() throws IOException {
+        PdfCache cache = newCache();
+        server.stop(0);
+        server = null;
+        cache.fetch(url, SESSION, null);
+    }
+
+    @Test
+    public void interruptStopsTheDownload() throws IOException {
+        File dir = temp.newFolder();
+        PdfCache cache = new PdfCache(dir, 1024 * 1024, connector, null, null);
+        try {
+            cache.fetch(url, SESSION, (read, total) -> Thread.currentThread().interrupt());
+            fail("Expected the download to stop");
+        } catch (InterruptedIOException e) {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(0, dir.list().length); // No temp file or entry left behind
+        assertArrayEquals(PDF, Files.readAllBytes(cache.fetch(url, SESSION, null).toPath()));
+    }
+
+    @Test
+    public void rotatingNonSessionCookiesKeepsTheEntry() throws IOException {
+        PdfCache cache = newCache();
+        File first = cache.fetch(url, "_ga=1; " + SESSION + "; csrftoken=x", null);
+        File second = cache.fetch(url, "_ga=2; " + SESSION + "; csrftoken=y", null);
+        assertEquals(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void differentSessionsGetDifferentEntries() throws IOException {
+        PdfCache cache = newCache();
+        File first = cache.fetch(url, "PHPSESSID=abc", null);
+        File second = cache.fetch(url, "PHPSESSID=def", null);
+        assertFalse(first.equals(second));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void sessionCookieByName() {
+        assertEquals("sid=1", PdfCache.sessionCookie("a=2; sid=1; b=3", "sid"));
+        assertEquals("JSESSIONID=x;portal_session=y",
+                PdfCache.sessionCookie("JSESSIONID=x; theme=dark; portal_session=y", null));
+        assertNull(PdfCache.sessionCookie("theme=dark", null));
+        assertNull(PdfCache.sessionCookie(null, null));
+        assertTrue(PdfCache.keyFor(url, null).matches("[0-9a-f]{64}"));
+    }
+}
@@ -0,0 +1,194 @@
+package com.sanigear.kioskapp.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs peer transfers between {@link PeerApkServer} and {@link PeerApkClient} over loopback.
+ */
+public class PeerApkTest {
+
+    private static final String HOST = InetAddress.getLoopbackAddress().getHostAddress();
+    private static final int TIMEOUT = 5000;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private byte[] content;
+    private File apk;
+    private String sha256;
+    private PeerApkServer server;
+    private int port;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[200 * 1024 + 17]; // Several buffers and a ragged tail
+        for (int i = 0; i < content.length; i++) content[i] = (byte) (i * 31);
+        apk = temp.newFile("app.apk");
+        Files.write(apk.toPath(), content);
+        sha256 = Hashes.sha256Hex(apk);
+        server = new PeerApkServer(apk, sha256);
+        port = server.start(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void getRoundTripVerifiesDigest() throws IOException {
+        File out = new File(temp.getRoot(), "fetched.apk");
+
+        assertEquals(out, PeerApkClient.fetch(HOST, port, sha256.toUpperCase(Locale.US), out, TIMEOUT));
+
+        assertArrayEquals(content, Files.readAllBytes(out.toPath()));
+        assertEquals(sha256, Hashes.sha256Hex(out));
+        assertFalse(new File(out.getPath() + ".part").exists());
+    }
+
+    @Test
+    public void otherDigestIs404() throws IOException {
+        File out = new File(temp.getRoot(), "fetched.apk");
+        String other = sha256.replace(sha256.charAt(0), sha256.charAt(0) == 'a' ? 'b' : 'a');
+        try {
+            PeerApkClient.fetch(HOST, port, other, out, TIMEOUT);
+            fail("Expected a 404");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("404"));
+        }
+        assertFalse(out.exists());
+        assertEquals("HTTP/1.1 404 Not Found", request("GET /apk/" + other)[0]);
+    }
+
+    @Test
+    public void headSendsLengthWithoutBody() throws IOException {
+        String[] response = request("HEAD " + PeerApkServer.PATH_PREFIX + sha256);
+
+        assertEquals("HTTP/1.1 200 OK", response[0]);
+        assertTrue(response[1].contains("Content-Length: " + content.length));
+        assertEquals("", response[2]);
+    }
+
+    @Test
+    public void otherMethodsAreRejected() throws IOException {
+        assertEquals("HTTP/1.1 405 Method Not Allowed", request("PUT " + PeerApkServer.PATH_PREFIX + sha256)[0]);
+    }
+
+    @Test
+    public void busyPastMaxClients() throws IOException {
+        // Peers that connect and never send a request hold their slot until the socket timeout
+        List<Socket> stalled = new ArrayList<>();
+        try {
+            for (int i = 0; i < PeerApkServer.MAX_CLIENTS; i++) {
+                stalled.add(new Socket(HOST, port));
+            }
+            // Accepts are handled in order, so both slots are taken by the time this one is seen
+            try (Socket busy = new Socket(HOST, port)) {
+                busy.setSoTimeout(TIMEOUT);
+                assertEquals("HTTP/1.1 503 Service Unavailable",
+                        PeerApkServer.readLine(new BufferedInputStream(busy.getInputStream())));
+            }
+        } finally {
+            for (Socket socket : stalled) socket.close();
+        }
+    }
+
+    @Test
+    public void digestMismatchIsRejected() throws IOException {
+        // A peer whose file doesn't match the digest it advertises
+        server.close();
+        String claimed = Hashes.hex(new byte[32]);
+        server = new PeerApkServer(apk, claimed);
+        port = server.start(InetAddress.getLoopbackAddress(), 0);
+        File out = temp.newFile("current.apk");
+        Files.write(out.toPath(), new byte[] {1, 2, 3});
+
+        try {
+            PeerApkClient.fetch(HOST, port, claimed, out, TIMEOUT);
+            fail("Expected a digest mismatch");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("digest mismatch"));
+        }
+        assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(out.toPath()));
+        assertFalse(new File(out.getPath() + ".part").exists());
+    }
+
+    @Test
+    public void truncatedTransferIsRejected() throws Exception {
+        File out = new File(temp.getRoot(), "fetched.apk");
+        try (ServerSocket cutOff = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread peer = new Thread(() -> {
+                try (Socket socket = cutOff.accept()) {
+                    InputStream in = new BufferedInputStream(socket.getInputStream());
+                    String line;
+                    while ((line = PeerApkServer.readLine(in)) != null && !line.isEmpty()) {
+                        // Drain the request
+                    }
+                    OutputStream o = socket.getOutputStream();
+                    o.write(("HTTP/1.1 200 OK\r\nContent-Length: " + content.length + "\r\n\r\n")
+                            .getBytes(StandardCharsets.US_ASCII));
+                    o.write(content, 0, content.length / 2);
+                    o.flush();
+                } catch (IOException ignored) {
+                    // The assertion is on the client side
+                }
+            });
+            peer.start();
+
+            try {
+                PeerApkClient.fetch(HOST, cutOff.getLocalPort(), sha256, out, TIMEOUT);
+                fail("Expected a cut-off transfer");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("cut off"));
+            }
+            peer.join(TIMEOUT);
+        }
+        assertFalse(out.exists());
+        assertFalse(new File(out.getPath() + ".part").exists());
+    }
+
+    // Sends a bare request line; returns the status line, the headers and whatever body followed
+    private String[] request(String requestLine) throws IOException {
+        try (Socket socket = new Socket(HOST, port)) {
+            socket.setSoTimeout(TIMEOUT);
+            OutputStream out = socket.getOutputStream();
+            out.write((requestLine + " HTTP/1.1\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String status = PeerApkServer.readLine(in);
+            StringBuilder headers = new StringBuilder();
+            String line;
+            while ((line = PeerApkServer.readLine(in)) != null && !line.isEmpty()) {
+                headers.append(line).append('\n');
+            }
+            StringBuilder body = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) body.append((char) c);
+            return new String[] {status, headers.toString(), body.toString()};
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.sanigear.kioskapp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SemanticVersionTest {
+
+    @Test
+    public void parsesComponents() {
+        SemanticVersion v = SemanticVersion.parse("3.10.2");
+        assertEquals(3, v.major());
+        assertEquals(10, v.minor());
+        assertEquals(2, v.patch());
+        assertEquals("3.4.0-beta.2", SemanticVersion.parse("3.4-beta.2+build7").toString());
+    }
+
+    @Test
+    public void missingComponentsAreZero() {
+        assertEquals(SemanticVersion.parse("3.4.0"), SemanticVersion.parse("3.4"));
+        assertEquals(SemanticVersion.parse("3.0.0"), SemanticVersion.parse("3"));
+    }
+
+    @Test
+    public void followsSemverPrecedence() {
+        // The example ordering from semver.org
+        String[] ordered = {"1.0.0-alpha", "1.0.0-alpha.1", "1.0.0-alpha.beta", "1.0.0-beta",
+                "1.0.0-beta.2", "1.0.0-beta.11", "1.0.0-rc.1", "1.0.0", "1.0.1", "1.1.0", "2.0.0"};
+        for (int i = 0; i < ordered.length - 1; i++) {
+            assertTrue(ordered[i] + " < " + ordered[i + 1],
+                    SemanticVersion.parse(ordered[i]).compareTo(SemanticVersion.parse(ordered[i + 1])) < 0);
+        }
+    }
+
+    @Test
+    public void buildMetadataIsIgnored() {
+        assertEquals(0, SemanticVersion.parse("3.4.1+build7").compareTo(SemanticVersion.parse("3.4.1+build9")));
+    }
+
+    @Test
+    public void garbageParsesAsZero() {
+        assertEquals(SemanticVersion.parse("0.0.0"), SemanticVersion.parse("latest"));
+        assertEquals(SemanticVersion.parse("0.0.0"), SemanticVersion.parse(null));
+        assertEquals(SemanticVersion.parse("3.4.0"), SemanticVersion.parse("3.4rc"));
+        assertTrue(SemanticVersion.parse("99999999999.0").major() > 0); // No overflow
+    }
+}
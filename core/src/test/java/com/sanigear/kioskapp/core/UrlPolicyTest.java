@@ -0,0 +1,35 @@
+package com.sanigear.kioskapp.core;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class UrlPolicyTest {
+
+    private final UrlPolicy policy = new UrlPolicy("automation.sanigear.app");
+
+    @Test
+    public void portalDomainAndSubdomainsAreAllowed() {
+        assertTrue(policy.isAllowedHost("automation.sanigear.app"));
+        assertTrue(policy.isAllowedHost("cdn.automation.sanigear.app"));
+        assertTrue(policy.isAllowedHost("Automation.Sanigear.App"));
+    }
+
+    @Test
+    public void lookalikeHostsAreBlocked() {
+        assertFalse(policy.isAllowedHost("automation.sanigear.app.evil.com"));
+        assertFalse(policy.isAllowedHost("notautomation.sanigear.app"));
+        assertFalse(policy.isAllowedHost("evil.com"));
+        assertFalse(policy.isAllowedHost("sanigear.app"));
+        assertFalse(policy.isAllowedHost(""));
+        assertFalse(policy.isAllowedHost(null));
+    }
+
+    @Test
+    public void pdfsAndForeignHostsAreNotNavigatedTo() {
+        assertFalse(policy.shouldBlockNavigation("https://automation.sanigear.app/a/home", "automation.sanigear.app"));
+        assertTrue(policy.shouldBlockNavigation("https://automation.sanigear.app/r/report.pdf", "automation.sanigear.app"));
+        assertTrue(policy.shouldBlockNavigation("https://automation.sanigear.app.evil.com/", "automation.sanigear.app.evil.com"));
+    }
+}
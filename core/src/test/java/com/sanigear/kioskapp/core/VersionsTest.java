@@ -0,0 +1,31 @@
+package com.sanigear.kioskapp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class VersionsTest {
+
+    @Test
+    public void tagPrefixIsStripped() {
+        assertEquals("3.4", Versions.fromTag("SanigearKiosk_v3.4"));
+        assertEquals("3.4", Versions.fromTag("v3.4"));
+        assertEquals("3.4", Versions.fromTag("V3.4"));
+        assertEquals("3.4.1", Versions.fromTag(" 3.4.1 "));
+    }
+
+    @Test
+    public void comparesNumerically() {
+        assertTrue(Versions.isNewer("3.10", "3.9"));
+        assertFalse(Versions.isNewer("3.9", "3.10"));
+        assertTrue(Versions.isNewer(Versions.fromTag("SanigearKiosk_v3.4"), "3.3"));
+    }
+
+    @Test
+    public void sameVersionIsNotNewer() {
+        assertFalse(Versions.isNewer("3.3", "3.3"));
+        assertFalse(Versions.isNewer("3.3.0", "3.3"));
+    }
+}